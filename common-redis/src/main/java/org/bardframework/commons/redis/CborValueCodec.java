@@ -0,0 +1,14 @@
+package org.bardframework.commons.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Jackson CBOR codec, compact binary format of json data model, needs jackson-dataformat-cbor.
+ */
+public class CborValueCodec extends JacksonValueCodec {
+
+    public CborValueCodec() {
+        super(configure(new ObjectMapper(new CBORFactory())));
+    }
+}
@@ -0,0 +1,209 @@
+package org.bardframework.commons.redis;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codec decorator that deflates encoded values bigger than {@code threshold}. Compressed values start with {@link #MARKER},
+ * algorithm byte and original length, other values are stored as delegate encoded them, so values written before compression
+ * is enabled, or small values, are read as is. Delegate must not produce values that start with {@link #MARKER} (json and smile never do).
+ * Deflater, inflater and output buffer are kept in a bounded pool and reused, output buffers bigger than
+ * {@link #MAX_RETAINED_BUFFER} are not kept. Values bigger than {@code maxLength} are not compressed, and compressed values
+ * that their length header is bigger than {@code maxLength} are rejected.
+ * Only values written by a codec are compressed, i.e. json values of {@link DataManagerRedisCodecImpl};
+ * {@link DataManagerRedisImpl} and strings of {@link DataManager#put} are never compressed.
+ */
+public class CompressingValueCodec implements ValueCodec {
+
+    public static final byte MARKER = 0;
+    public static final byte DEFLATE = 1;
+    public static final int DEFAULT_THRESHOLD = 1024;
+    public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+    public static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int INITIAL_BUFFER = 8192;
+    private static final int HEADER_LENGTH = 6;
+
+    private final ValueCodec delegate;
+    private final int threshold;
+    private final int level;
+    private final int maxLength;
+    private final BlockingQueue<Buffers> pool;
+    private final LongAdder compressedCount = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressedCount = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    public CompressingValueCodec(ValueCodec delegate) {
+        this(delegate, DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+    }
+
+    public CompressingValueCodec(ValueCodec delegate, int threshold, int level) {
+        this(delegate, threshold, level, DEFAULT_MAX_LENGTH, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param maxLength max length of a value to compress or decompress
+     * @param poolSize  max number of idle deflater, inflater and buffer sets that are kept
+     */
+    public CompressingValueCodec(ValueCodec delegate, int threshold, int level, int maxLength, int poolSize) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.level = level;
+        this.maxLength = maxLength;
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        byte[] bytes = delegate.encode(value);
+        if (bytes.length < threshold || bytes.length > maxLength) {
+            return bytes;
+        }
+        long start = System.nanoTime();
+        Buffers buffers = this.acquire();
+        try {
+            Deflater deflater = buffers.deflater;
+            deflater.reset();
+            deflater.setInput(bytes);
+            deflater.finish();
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length + HEADER_LENGTH >= bytes.length) {
+                    /*
+                        not compressible
+                     */
+                    return bytes;
+                }
+                if (length == buffers.output.length) {
+                    buffers.output = Arrays.copyOf(buffers.output, Math.min(buffers.output.length * 2, bytes.length));
+                }
+                length += deflater.deflate(buffers.output, length, buffers.output.length - length);
+            }
+            if (length + HEADER_LENGTH >= bytes.length) {
+                return bytes;
+            }
+            return this.compressed(bytes.length, buffers.output, length, start);
+        } finally {
+            this.release(buffers);
+        }
+    }
+
+    private byte[] compressed(int originalLength, byte[] output, int length, long start) {
+        byte[] compressed = new byte[HEADER_LENGTH + length];
+        compressed[0] = MARKER;
+        compressed[1] = DEFLATE;
+        compressed[2] = (byte) (originalLength >>> 24);
+        compressed[3] = (byte) (originalLength >>> 16);
+        compressed[4] = (byte) (originalLength >>> 8);
+        compressed[5] = (byte) originalLength;
+        System.arraycopy(output, 0, compressed, HEADER_LENGTH, length);
+        compressNanos.add(System.nanoTime() - start);
+        compressedCount.increment();
+        uncompressedBytes.add(originalLength);
+        compressedBytes.add(compressed.length);
+        return compressed;
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MARKER) {
+            return delegate.decode(bytes, clazz);
+        }
+        if (bytes[1] != DEFLATE) {
+            throw new IllegalArgumentException("unknown compression algorithm " + bytes[1]);
+        }
+        long start = System.nanoTime();
+        int length = (bytes[2] & 0xFF) << 24 | (bytes[3] & 0xFF) << 16 | (bytes[4] & 0xFF) << 8 | bytes[5] & 0xFF;
+        if (length < 0 || length > maxLength) {
+            throw new IllegalArgumentException("invalid length of compressed value " + length);
+        }
+        byte[] decompressed = new byte[length];
+        Buffers buffers = this.acquire();
+        try {
+            Inflater inflater = buffers.inflater;
+            inflater.reset();
+            inflater.setInput(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                int inflated = inflater.inflate(decompressed, offset, length - offset);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("truncated compressed value");
+                }
+                offset += inflated;
+            }
+            if (offset != length) {
+                throw new IllegalArgumentException("compressed value is shorter than its length " + length);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("error decompressing value", e);
+        } finally {
+            this.release(buffers);
+        }
+        decompressNanos.add(System.nanoTime() - start);
+        decompressedCount.increment();
+        return delegate.decode(decompressed, clazz);
+    }
+
+    /**
+     * @return compressed size divided by original size of compressed values, 1 if nothing is compressed yet
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.sum();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.sum() / uncompressed;
+    }
+
+    public long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    /**
+     * registers compression ratio, saved bytes and compress/decompress time
+     */
+    public void monitor(MeterRegistry registry, String name) {
+        Gauge.builder(name + ".compression.ratio", this, CompressingValueCodec::getCompressionRatio).register(registry);
+        FunctionCounter.builder(name + ".compression.saved.bytes", this, codec -> codec.uncompressedBytes.sum() - codec.compressedBytes.sum()).register(registry);
+        FunctionTimer.builder(name + ".compression.compress", this, codec -> codec.compressedCount.sum(), codec -> codec.compressNanos.sum(), TimeUnit.NANOSECONDS).register(registry);
+        FunctionTimer.builder(name + ".compression.decompress", this, codec -> codec.decompressedCount.sum(), codec -> codec.decompressNanos.sum(), TimeUnit.NANOSECONDS).register(registry);
+    }
+
+    private Buffers acquire() {
+        Buffers buffers = pool.poll();
+        return null == buffers ? new Buffers(level) : buffers;
+    }
+
+    /**
+     * buffers that are not kept release native memory of their deflater and inflater immediately
+     */
+    private void release(Buffers buffers) {
+        if (buffers.output.length > MAX_RETAINED_BUFFER) {
+            buffers.output = new byte[INITIAL_BUFFER];
+        }
+        if (!pool.offer(buffers)) {
+            buffers.deflater.end();
+            buffers.inflater.end();
+        }
+    }
+
+    private static class Buffers {
+        private final Deflater deflater;
+        private final Inflater inflater = new Inflater();
+        private byte[] output = new byte[INITIAL_BUFFER];
+
+        Buffers(int level) {
+            this.deflater = new Deflater(level);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package org.bardframework.commons.redis;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,4 +32,58 @@ public interface DataManager {
     Object getFromMap(String key, String hashKey);
 
     void removeFromMap(String userId, String topic, Duration expiration);
+
+    /**
+     * @return values of existing keys, missing keys are not in result
+     */
+    default Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String key : keys) {
+            String value = this.get(key);
+            if (null != value) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return values of existing keys, missing keys are not in result
+     */
+    default <T> Map<String, T> getAllFromJson(Collection<String> keys, Class<T> clazz) {
+        Map<String, T> values = new LinkedHashMap<>();
+        for (String key : keys) {
+            T value = this.getFromJson(key, clazz);
+            if (null != value) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    default void putAll(Map<String, String> values, Duration expiration) {
+        values.forEach((key, value) -> this.put(key, value, expiration));
+    }
+
+    default void addToSet(String key, Collection<String> values, Duration expiration) {
+        values.forEach(value -> this.addToSet(key, value, expiration));
+    }
+
+    default void removeFromSet(String key, Collection<String> values, Duration expiration) {
+        values.forEach(value -> this.removeFromSet(key, value, expiration));
+    }
+
+    /**
+     * @return values of existing hash keys, missing hash keys are not in result
+     */
+    default Map<String, Object> getFromMap(String key, Collection<String> hashKeys) {
+        Map<String, Object> values = new HashMap<>();
+        for (String hashKey : hashKeys) {
+            Object value = this.getFromMap(key, hashKey);
+            if (null != value) {
+                values.put(hashKey, value);
+            }
+        }
+        return values;
+    }
 }
@@ -0,0 +1,93 @@
+package org.bardframework.commons.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes values of {@link #putAsJson} and reads values of {@link #getFromJson} and {@link #getAllFromJson} using a {@link ValueCodec},
+ * through a template with byte array value serializer, so values are not converted to string and serialized again.
+ * Other operations are done by {@link DataManagerRedisImpl}, so strings of {@link #put} and {@link #putAll} are not
+ * encoded by codec, e.g. are not compressed by {@link CompressingValueCodec}.
+ */
+@Slf4j
+public class DataManagerRedisCodecImpl extends DataManagerRedisImpl {
+
+    protected final RedisTemplate<String, byte[]> binaryTemplate;
+    private final ValueCodec codec;
+
+    public DataManagerRedisCodecImpl(RedisTemplate<String, Object> redisTemplate, RedisTemplate<String, byte[]> binaryTemplate, ValueCodec codec) {
+        this(redisTemplate, binaryTemplate, codec, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public DataManagerRedisCodecImpl(RedisTemplate<String, Object> redisTemplate, RedisTemplate<String, byte[]> binaryTemplate, ValueCodec codec, int maxBatchSize) {
+        super(redisTemplate, maxBatchSize);
+        this.binaryTemplate = binaryTemplate;
+        this.codec = codec;
+    }
+
+    /**
+     * @return template with string keys and values that are stored as is
+     */
+    public static RedisTemplate<String, byte[]> binaryTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Override
+    public void putAsJson(String key, Object value, Duration expiration) {
+        try {
+            this.binaryTemplate.opsForValue().set(key, codec.encode(value), expiration);
+        } catch (Exception e) {
+            log.error("error putting [{}] to redis", key);
+            throw new IllegalArgumentException("error writing value", e);
+        }
+    }
+
+    @Override
+    public <T> T getFromJson(String tokenId, Class<T> clazz) {
+        try {
+            byte[] bytes = this.binaryTemplate.opsForValue().get(tokenId);
+            return null == bytes ? null : codec.decode(bytes, clazz);
+        } catch (Exception e) {
+            log.error("error getting value with key [{}] from redis server, and converting to [{}]", tokenId, clazz);
+            throw new IllegalArgumentException("error getting value from server", e);
+        }
+    }
+
+    @Override
+    public <T> Map<String, T> getAllFromJson(Collection<String> keys, Class<T> clazz) {
+        Map<String, T> values = new LinkedHashMap<>();
+        try {
+            for (List<String> batch : this.batches(keys)) {
+                List<byte[]> results = this.binaryTemplate.opsForValue().multiGet(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (null != results && null != results.get(i)) {
+                        values.put(batch.get(i), codec.decode(results.get(i), clazz));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("error getting [{}] keys from redis server, and converting to [{}]", keys.size(), clazz);
+            throw new IllegalArgumentException("error getting value from server", e);
+        }
+        return values;
+    }
+
+    public ValueCodec getCodec() {
+        return codec;
+    }
+}
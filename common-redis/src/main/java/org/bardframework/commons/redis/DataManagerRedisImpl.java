@@ -3,16 +3,39 @@ package org.bardframework.commons.redis;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Writes strings and json strings through value serializer of template, values are never compressed,
+ * use {@link DataManagerRedisCodecImpl} with a {@link CompressingValueCodec} to compress json values.
+ */
 @Slf4j
 public class DataManagerRedisImpl implements DataManager {
 
     private static final String ERROR_WRITE_VALUE = "error writing value";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    /**
+     * sha1 of script is cached, template runs it using EVALSHA and loads it only on first miss
+     */
+    private static final RedisScript<Long> WRITE_WITH_EXPIRATION = RedisScript.of(new ClassPathResource("org/bardframework/commons/redis/write-with-expiration.lua"), Long.class);
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
 
     protected final RedisTemplate<String, Object> redisTemplate;
 
@@ -21,8 +44,21 @@ public class DataManagerRedisImpl implements DataManager {
      */
     private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
 
+    /**
+     * max keys of each MGET, HMGET or pipeline of bulk operations, bigger batches are split, so a single call does not block redis for long
+     */
+    private final int maxBatchSize;
+
     public DataManagerRedisImpl(RedisTemplate<String, Object> redisTemplate) {
+        this(redisTemplate, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public DataManagerRedisImpl(RedisTemplate<String, Object> redisTemplate, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
         this.redisTemplate = redisTemplate;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
@@ -78,9 +114,7 @@ public class DataManagerRedisImpl implements DataManager {
     @Override
     public void addToSet(String key, String value, Duration expiration) {
         try {
-            this.redisTemplate.opsForSet().add(key, value);
-            this.redisTemplate.persist(key);
-            this.redisTemplate.expire(key, expiration);
+            this.writeWithExpiration("SADD", key, expiration, List.of(this.serializeValue(value)));
         } catch (Exception e) {
             log.error("error putting [{}] to redis", key);
             throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
@@ -100,9 +134,7 @@ public class DataManagerRedisImpl implements DataManager {
     @Override
     public void removeFromSet(String key, String value, Duration expiration) {
         try {
-            this.redisTemplate.opsForSet().remove(key, value);
-            this.redisTemplate.persist(key);
-            this.redisTemplate.expire(key, expiration);
+            this.writeWithExpiration("SREM", key, expiration, List.of(this.serializeValue(value)));
         } catch (Exception e) {
             log.error("error removing set value of [{}] from redis", key);
             throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
@@ -112,9 +144,18 @@ public class DataManagerRedisImpl implements DataManager {
     @Override
     public void putAsMap(String key, Map<?, ?> map, Duration expiration) {
         try {
-            this.redisTemplate.opsForHash().putAll(key, map);
-            this.redisTemplate.persist(key);
-            this.redisTemplate.expire(key, expiration);
+            List<byte[]> args = new ArrayList<>(Math.min(map.size(), maxBatchSize) * 2);
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                args.add(this.serialize(redisTemplate.getHashKeySerializer(), entry.getKey()));
+                args.add(this.serialize(redisTemplate.getHashValueSerializer(), entry.getValue()));
+                if (args.size() >= maxBatchSize * 2) {
+                    this.writeWithExpiration("HSET", key, expiration, args);
+                    args.clear();
+                }
+            }
+            if (!args.isEmpty()) {
+                this.writeWithExpiration("HSET", key, expiration, args);
+            }
         } catch (Exception e) {
             log.error("error putting [{}] to redis", key);
             throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
@@ -134,11 +175,153 @@ public class DataManagerRedisImpl implements DataManager {
     @Override
     public void removeFromMap(String userId, String topic, Duration expiration) {
         try {
-            this.redisTemplate.opsForHash().delete(userId, topic);
-            this.redisTemplate.expire(userId, expiration);
+            this.writeWithExpiration("HDEL", userId, expiration, List.of(this.serialize(redisTemplate.getHashKeySerializer(), topic)));
         } catch (Exception e) {
             log.error("error removing map key of [{}] from redis", userId);
             throw new IllegalArgumentException("error writing value", e);
         }
     }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new LinkedHashMap<>();
+        try {
+            for (List<String> batch : this.batches(keys)) {
+                List<Object> results = this.redisTemplate.opsForValue().multiGet(batch);
+                for (int i = 0; i < batch.size(); i++) {
+                    if (null != results && null != results.get(i)) {
+                        values.put(batch.get(i), (String) results.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("error getting [{}] keys from redis server", keys.size());
+            throw new IllegalArgumentException("error getting value from server", e);
+        }
+        return values;
+    }
+
+    @Override
+    public <T> Map<String, T> getAllFromJson(Collection<String> keys, Class<T> clazz) {
+        Map<String, T> values = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : this.getAll(keys).entrySet()) {
+            try {
+                values.put(entry.getKey(), objectMapper.readValue(entry.getValue(), clazz));
+            } catch (Exception e) {
+                log.error("error converting value with key [{}] to [{}]", entry.getKey(), clazz);
+                throw new IllegalArgumentException("error getting value from server", e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * each batch is sent in one pipeline
+     */
+    @Override
+    public void putAll(Map<String, String> values, Duration expiration) {
+        try {
+            for (List<String> batch : this.batches(values.keySet())) {
+                this.redisTemplate.executePipelined(new SessionCallback<>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                        RedisOperations<String, Object> redisOperations = (RedisOperations<String, Object>) operations;
+                        for (String key : batch) {
+                            redisOperations.opsForValue().set(key, values.get(key), expiration);
+                        }
+                        return null;
+                    }
+                });
+            }
+        } catch (Exception e) {
+            log.error("error putting [{}] keys to redis", values.size());
+            throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
+        }
+    }
+
+    @Override
+    public void addToSet(String key, Collection<String> values, Duration expiration) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            for (List<String> batch : this.batches(values)) {
+                this.writeWithExpiration("SADD", key, expiration, batch.stream().map(this::serializeValue).toList());
+            }
+        } catch (Exception e) {
+            log.error("error putting [{}] to redis", key);
+            throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
+        }
+    }
+
+    @Override
+    public void removeFromSet(String key, Collection<String> values, Duration expiration) {
+        if (values.isEmpty()) {
+            return;
+        }
+        try {
+            for (List<String> batch : this.batches(values)) {
+                this.writeWithExpiration("SREM", key, expiration, batch.stream().map(this::serializeValue).toList());
+            }
+        } catch (Exception e) {
+            log.error("error removing set value of [{}] from redis", key);
+            throw new IllegalArgumentException(ERROR_WRITE_VALUE, e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getFromMap(String key, Collection<String> hashKeys) {
+        Map<String, Object> values = new HashMap<>();
+        try {
+            for (List<String> batch : this.batches(hashKeys)) {
+                List<Object> results = this.redisTemplate.opsForHash().multiGet(key, new ArrayList<>(batch));
+                for (int i = 0; i < batch.size(); i++) {
+                    if (null != results.get(i)) {
+                        values.put(batch.get(i), results.get(i));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("error getting value with key [{}] from redis server", key);
+            throw new IllegalArgumentException("error getting value from server", e);
+        }
+        return values;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * runs write command and PEXPIRE of key in one script call, it is atomic, costs one round trip and works on redis cluster,
+     * since script has a single key. Arguments are serialized by serializers of template, same as operations of template do.
+     */
+    private void writeWithExpiration(String command, String key, Duration expiration, List<byte[]> args) {
+        Object[] scriptArgs = new Object[args.size() + 2];
+        scriptArgs[0] = command.getBytes(StandardCharsets.UTF_8);
+        scriptArgs[1] = String.valueOf(expiration.toMillis()).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < args.size(); i++) {
+            scriptArgs[i + 2] = args.get(i);
+        }
+        this.redisTemplate.execute(WRITE_WITH_EXPIRATION, RedisSerializer.byteArray(), RESULT_SERIALIZER, List.of(key), scriptArgs);
+    }
+
+    private byte[] serializeValue(Object value) {
+        return this.serialize(redisTemplate.getValueSerializer(), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(RedisSerializer<?> serializer, Object value) {
+        return null == serializer ? (byte[]) value : ((RedisSerializer<Object>) serializer).serialize(value);
+    }
+
+    protected List<List<String>> batches(Collection<String> keys) {
+        List<String> all = new ArrayList<>(keys);
+        List<List<String>> batches = new ArrayList<>((all.size() + maxBatchSize - 1) / maxBatchSize);
+        for (int i = 0; i < all.size(); i += maxBatchSize) {
+            batches.add(all.subList(i, Math.min(i + maxBatchSize, all.size())));
+        }
+        return batches;
+    }
 }
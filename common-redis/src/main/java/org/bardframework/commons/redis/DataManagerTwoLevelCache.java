@@ -0,0 +1,363 @@
+package org.bardframework.commons.redis;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorator that keeps values of {@link #get(String)} and {@link #getFromJson(String, Class)} in a bounded local cache
+ * (size and ttl bounded, W-TinyLFU eviction), only for keys that start with one of {@code cachedPrefixes}.
+ * On a miss, raw value and remaining expiration of key are read in one pipeline using {@code redisTemplate}, so it must be
+ * the template that delegate writes strings with. Raw value is cached and decoded on read, strings with value serializer
+ * of template and json values with {@code jsonCodec}, last decoded value of each entry is kept, so a key read as string
+ * and as json object gets the right value for each.
+ * Each entry lives for {@code ttl} or remaining expiration of its key on redis, whichever is shorter, so a value is never
+ * served locally after redis expired it.
+ * Writes and removes of cached keys are published on {@link #CHANNEL}, so other nodes invalidate their local entry.
+ * A value read concurrently with an invalidation, or written to redis without this decorator, may stay stale until its ttl,
+ * so ttl is the bound of staleness.
+ * Objects of {@link #getFromJson(String, Class)} are shared between callers and must not be modified.
+ */
+@Slf4j
+public class DataManagerTwoLevelCache implements DataManager, MessageListener {
+
+    public static final String CHANNEL = "data-manager:invalidate";
+    private static final byte[] CHANNEL_BYTES = CHANNEL.getBytes(StandardCharsets.UTF_8);
+    private static final ValueCodec JSON = JacksonValueCodec.json();
+
+    private final DataManager delegate;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final List<String> cachedPrefixes;
+    private final long ttlNanos;
+    private final Cache<String, Cached> cache;
+    /**
+     * codec of json values, null if they are written as json strings with value serializer of template
+     */
+    private final ValueCodec jsonCodec;
+
+    /**
+     * json values are decoded with codec of delegate if it is a {@link DataManagerRedisCodecImpl}, otherwise as json strings
+     */
+    public DataManagerTwoLevelCache(DataManager delegate, RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer, Collection<String> cachedPrefixes, long maximumSize, Duration ttl) {
+        this(delegate, redisTemplate, listenerContainer, cachedPrefixes, maximumSize, ttl, delegate instanceof DataManagerRedisCodecImpl codecImpl ? codecImpl.getCodec() : null);
+    }
+
+    public DataManagerTwoLevelCache(DataManager delegate, RedisTemplate<String, Object> redisTemplate, RedisMessageListenerContainer listenerContainer, Collection<String> cachedPrefixes, long maximumSize, Duration ttl, ValueCodec jsonCodec) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.jsonCodec = jsonCodec;
+        this.cachedPrefixes = List.copyOf(cachedPrefixes);
+        this.ttlNanos = ttl.toNanos();
+        this.cache = Caffeine.newBuilder().maximumSize(maximumSize).expireAfter(new CachedExpiry()).recordStats().build();
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    public String get(String key) {
+        if (!this.isCached(key)) {
+            return delegate.get(key);
+        }
+        Cached cached = this.getOrLoad(key);
+        return null == cached ? null : this.decode(cached, String.class, false);
+    }
+
+    @Override
+    public <T> T getFromJson(String tokenId, Class<T> clazz) {
+        if (!this.isCached(tokenId)) {
+            return delegate.getFromJson(tokenId, clazz);
+        }
+        Cached cached = this.getOrLoad(tokenId);
+        return null == cached ? null : this.decode(cached, clazz, true);
+    }
+
+    /**
+     * cached keys are served locally and their misses are loaded in one pipeline, others are read from delegate in one bulk call
+     */
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new LinkedHashMap<>();
+        List<String> misses = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (String key : keys) {
+            /*
+                placeholders keep order of keys
+             */
+            if (!this.isCached(key)) {
+                others.add(key);
+                values.put(key, null);
+                continue;
+            }
+            Cached cached = cache.getIfPresent(key);
+            if (null == cached) {
+                misses.add(key);
+            }
+            values.put(key, null == cached ? null : this.decode(cached, String.class, false));
+        }
+        if (!misses.isEmpty()) {
+            this.load(misses).forEach((key, cached) -> values.put(key, this.decode(cached, String.class, false)));
+        }
+        if (!others.isEmpty()) {
+            values.putAll(delegate.getAll(others));
+        }
+        values.values().removeIf(Objects::isNull);
+        return values;
+    }
+
+    @Override
+    public void put(String key, String value, Duration expiration) {
+        delegate.put(key, value, expiration);
+        this.invalidate(key);
+    }
+
+    @Override
+    public void putAsJson(String key, Object value, Duration expiration) {
+        delegate.putAsJson(key, value, expiration);
+        this.invalidate(key);
+    }
+
+    @Override
+    public void putAll(Map<String, String> values, Duration expiration) {
+        delegate.putAll(values, expiration);
+        values.keySet().forEach(this::invalidate);
+    }
+
+    @Override
+    public boolean remove(String key) {
+        boolean removed = delegate.remove(key);
+        this.invalidate(key);
+        return removed;
+    }
+
+    @Override
+    public boolean isExist(String key) {
+        return delegate.isExist(key);
+    }
+
+    @Override
+    public void addToSet(String key, String value, Duration expiration) {
+        delegate.addToSet(key, value, expiration);
+    }
+
+    @Override
+    public void addToSet(String key, Collection<String> values, Duration expiration) {
+        delegate.addToSet(key, values, expiration);
+    }
+
+    @Override
+    public Set<String> getFromSet(String key) {
+        return delegate.getFromSet(key);
+    }
+
+    @Override
+    public void removeFromSet(String key, String value, Duration expiration) {
+        delegate.removeFromSet(key, value, expiration);
+    }
+
+    @Override
+    public void removeFromSet(String key, Collection<String> values, Duration expiration) {
+        delegate.removeFromSet(key, values, expiration);
+    }
+
+    @Override
+    public void putAsMap(String key, Map<?, ?> map, Duration expiration) {
+        delegate.putAsMap(key, map, expiration);
+    }
+
+    @Override
+    public Object getFromMap(String key, String hashKey) {
+        return delegate.getFromMap(key, hashKey);
+    }
+
+    @Override
+    public Map<String, Object> getFromMap(String key, Collection<String> hashKeys) {
+        return delegate.getFromMap(key, hashKeys);
+    }
+
+    @Override
+    public void removeFromMap(String userId, String topic, Duration expiration) {
+        delegate.removeFromMap(userId, topic, expiration);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        cache.invalidate(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * registers hit, miss, eviction and size metrics of local cache
+     */
+    public void monitor(MeterRegistry registry, String cacheName) {
+        CaffeineCacheMetrics.monitor(registry, cache, cacheName);
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private Cached getOrLoad(String key) {
+        Cached cached = cache.getIfPresent(key);
+        return null == cached ? this.load(List.of(key)).get(key) : cached;
+    }
+
+    /**
+     * reads keys with their remaining expiration, keys that are not on redis are not in result and
+     * keys that are expiring are returned but not cached
+     */
+    private Map<String, Cached> load(List<String> keys) {
+        List<Object> results = this.getWithRemainingMillis(keys);
+        Map<String, Cached> loaded = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (!(results.get(i * 2) instanceof byte[] raw)) {
+                continue;
+            }
+            Long millis = results.get(i * 2 + 1) instanceof Long remaining ? remaining : null;
+            boolean cacheable = null != millis && (millis > 0 || millis == -1);
+            long nanos = !cacheable || millis == -1 ? ttlNanos : Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(millis));
+            Cached cached = new Cached(raw, nanos);
+            if (cacheable) {
+                cache.put(keys.get(i), cached);
+            }
+            loaded.put(keys.get(i), cached);
+        }
+        return loaded;
+    }
+
+    /**
+     * runs GET and PTTL of each key in one pipeline
+     *
+     * @return raw value, or null if key doesn't exist, followed by remaining expiration in milliseconds, -1 if key has
+     * no expiration and -2 if key doesn't exist, for each key
+     */
+    protected List<Object> getWithRemainingMillis(List<String> keys) {
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                byte[] rawKey = this.serialize(redisTemplate.getKeySerializer(), key);
+                connection.stringCommands().get(rawKey);
+                connection.keyCommands().pTtl(rawKey);
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+    }
+
+    /**
+     * last decoded value of entry is reused if it was decoded the same way to the same type
+     */
+    private <T> T decode(Cached cached, Class<T> clazz, boolean json) {
+        Decoded decoded = cached.decoded;
+        if (null != decoded && decoded.type() == clazz && decoded.json() == json) {
+            return clazz.cast(decoded.value());
+        }
+        T value;
+        if (!json) {
+            value = clazz.cast(this.deserialize(cached.raw));
+        } else if (null != jsonCodec) {
+            value = jsonCodec.decode(cached.raw, clazz);
+        } else {
+            value = JSON.decode(this.deserialize(cached.raw).getBytes(StandardCharsets.UTF_8), clazz);
+        }
+        cached.decoded = new Decoded(clazz, json, value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serialize(RedisSerializer<?> serializer, String value) {
+        return null == serializer ? value.getBytes(StandardCharsets.UTF_8) : ((RedisSerializer<String>) serializer).serialize(value);
+    }
+
+    private String deserialize(byte[] raw) {
+        RedisSerializer<?> serializer = redisTemplate.getValueSerializer();
+        return null == serializer ? new String(raw, StandardCharsets.UTF_8) : (String) serializer.deserialize(raw);
+    }
+
+    private boolean isCached(String key) {
+        for (String prefix : cachedPrefixes) {
+            if (key.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * message is published raw, not with value serializer of template, so all nodes read it regardless of their serializer
+     */
+    private void invalidate(String key) {
+        if (!this.isCached(key)) {
+            return;
+        }
+        cache.invalidate(key);
+        try {
+            redisTemplate.execute((RedisCallback<Long>) connection -> connection.publish(CHANNEL_BYTES, key.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            log.error("error publishing invalidation of [{}]", key, e);
+        }
+    }
+
+    private static final class Cached {
+        private final byte[] raw;
+        /**
+         * time to live of entry, capped by remaining expiration of key on redis
+         */
+        private final long ttlNanos;
+        private volatile Decoded decoded;
+
+        private Cached(byte[] raw, long ttlNanos) {
+            this.raw = raw;
+            this.ttlNanos = ttlNanos;
+        }
+
+        long ttlNanos() {
+            return ttlNanos;
+        }
+    }
+
+    /**
+     * @param json true if value is decoded as json, otherwise it is the string value of key
+     */
+    private record Decoded(Class<?> type, boolean json, Object value) {
+    }
+
+    private static class CachedExpiry implements Expiry<String, Cached> {
+
+        @Override
+        public long expireAfterCreate(String key, Cached value, long currentTime) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Cached value, long currentTime, long currentDuration) {
+            return value.ttlNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String key, Cached value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.bardframework.commons.redis;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+/**
+ * Jackson codec that writes directly to bytes, without intermediate string. Json values are compatible with values
+ * written by {@link DataManagerRedisImpl#putAsJson} using a string serializer.
+ * Binary formats of same data model are in {@link SmileValueCodec} and {@link CborValueCodec}, so this class doesn't need their optional modules.
+ */
+public class JacksonValueCodec implements ValueCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JacksonValueCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public static JacksonValueCodec json() {
+        return new JacksonValueCodec(configure(new ObjectMapper()));
+    }
+
+    /**
+     * must not failed on unknown properties
+     */
+    protected static ObjectMapper configure(ObjectMapper objectMapper) {
+        return objectMapper.registerModule(new JavaTimeModule()).disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("error encoding value", e);
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> clazz) {
+        try {
+            return objectMapper.readValue(bytes, clazz);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("error decoding value to " + clazz, e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.bardframework.commons.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Jackson Smile codec, binary json that is smaller and faster to parse, needs jackson-dataformat-smile.
+ */
+public class SmileValueCodec extends JacksonValueCodec {
+
+    public SmileValueCodec() {
+        super(configure(new ObjectMapper(new SmileFactory())));
+    }
+}
@@ -0,0 +1,11 @@
+package org.bardframework.commons.redis;
+
+/**
+ * Converts values to bytes that are stored in redis as is, implementations must be thread safe.
+ */
+public interface ValueCodec {
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> clazz);
+}
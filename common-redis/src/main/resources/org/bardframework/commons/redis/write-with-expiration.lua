@@ -0,0 +1,12 @@
+-- runs a write command on a single key and sets expiration of key atomically, so key is never left without ttl
+-- KEYS[1]: key
+-- ARGV[1]: command, one of SADD, SREM, HSET, HDEL
+-- ARGV[2]: expiration in millis
+-- ARGV[3..]: arguments of command
+local command = ARGV[1]
+if command ~= 'SADD' and command ~= 'SREM' and command ~= 'HSET' and command ~= 'HDEL' then
+    return redis.error_reply('unsupported command ' .. command)
+end
+local result = redis.call(command, KEYS[1], unpack(ARGV, 3))
+redis.call('PEXPIRE', KEYS[1], ARGV[2])
+return result
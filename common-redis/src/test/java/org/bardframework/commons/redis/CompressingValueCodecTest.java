@@ -0,0 +1,102 @@
+package org.bardframework.commons.redis;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+class CompressingValueCodecTest {
+
+    private final ValueCodec json = JacksonValueCodec.json();
+    private final CompressingValueCodec codec = new CompressingValueCodec(json, 1024, Deflater.BEST_SPEED, 1024 * 1024, 2);
+
+    @Test
+    void belowThreshold() {
+        String value = "small value";
+        byte[] encoded = codec.encode(value);
+        Assertions.assertThat(encoded).isEqualTo(json.encode(value));
+        Assertions.assertThat(codec.decode(encoded, String.class)).isEqualTo(value);
+        Assertions.assertThat(codec.getCompressedCount()).isZero();
+    }
+
+    @Test
+    void roundTrip() {
+        /*
+            compressed output is bigger than initial buffer, so buffer grows while deflating
+         */
+        String value = this.randomHex(200_000);
+        byte[] encoded = codec.encode(value);
+        Assertions.assertThat(encoded[0]).isEqualTo(CompressingValueCodec.MARKER);
+        Assertions.assertThat(encoded.length).isLessThan(json.encode(value).length);
+        Assertions.assertThat(codec.decode(encoded, String.class)).isEqualTo(value);
+        Assertions.assertThat(codec.getCompressedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void incompressible() {
+        CompressingValueCodec codec = new CompressingValueCodec(new RawCodec(), 1024, Deflater.BEST_SPEED);
+        byte[] random = new byte[100_000];
+        new Random(1).nextBytes(random);
+        byte[] encoded = codec.encode(random);
+        Assertions.assertThat(encoded).isSameAs(random);
+        Assertions.assertThat(codec.decode(encoded, byte[].class)).isEqualTo(random);
+        Assertions.assertThat(codec.getCompressedCount()).isZero();
+    }
+
+    @Test
+    void biggerThanMaxLength() {
+        String value = "a".repeat(2 * 1024 * 1024);
+        Assertions.assertThat(codec.encode(value)).isEqualTo(json.encode(value));
+    }
+
+    @Test
+    void legacyRawValue() {
+        String value = "a".repeat(10_000);
+        Assertions.assertThat(codec.decode(json.encode(value), String.class)).isEqualTo(value);
+    }
+
+    @Test
+    void corruptHeader() {
+        byte[] encoded = codec.encode("a".repeat(10_000));
+
+        byte[] negative = encoded.clone();
+        negative[2] = (byte) 0xFF;
+        Assertions.assertThatThrownBy(() -> codec.decode(negative, String.class)).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] tooBig = encoded.clone();
+        tooBig[2] = 0x7F;
+        Assertions.assertThatThrownBy(() -> codec.decode(tooBig, String.class)).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] longer = encoded.clone();
+        longer[4]++;
+        Assertions.assertThatThrownBy(() -> codec.decode(longer, String.class)).isInstanceOf(IllegalArgumentException.class);
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+        Assertions.assertThatThrownBy(() -> codec.decode(truncated, String.class)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private String randomHex(int bytes) {
+        byte[] random = new byte[bytes];
+        new Random(1).nextBytes(random);
+        return HexFormat.of().formatHex(random);
+    }
+
+    /**
+     * stores byte arrays as is
+     */
+    private static class RawCodec implements ValueCodec {
+
+        @Override
+        public byte[] encode(Object value) {
+            return (byte[]) value;
+        }
+
+        @Override
+        public <T> T decode(byte[] bytes, Class<T> clazz) {
+            return clazz.cast(bytes);
+        }
+    }
+}
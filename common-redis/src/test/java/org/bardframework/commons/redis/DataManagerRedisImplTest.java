@@ -0,0 +1,185 @@
+package org.bardframework.commons.redis;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+class DataManagerRedisImplTest {
+
+    private static final Duration EXPIRATION = Duration.ofSeconds(10);
+
+    private final StubTemplate template = new StubTemplate();
+    private final DataManagerRedisImpl dataManager = new DataManagerRedisImpl(template, 3);
+
+    @Test
+    void batches() {
+        Assertions.assertThat(dataManager.batches(this.keys(7))).containsExactly(List.of("k0", "k1", "k2"), List.of("k3", "k4", "k5"), List.of("k6"));
+        Assertions.assertThat(dataManager.batches(this.keys(6))).containsExactly(List.of("k0", "k1", "k2"), List.of("k3", "k4", "k5"));
+        Assertions.assertThat(dataManager.batches(this.keys(2))).containsExactly(List.of("k0", "k1"));
+        Assertions.assertThat(dataManager.batches(List.of())).isEmpty();
+    }
+
+    @Test
+    void invalidBatchSize() {
+        Assertions.assertThatThrownBy(() -> new DataManagerRedisImpl(new RedisTemplate<>(), 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void getAll() {
+        Mockito.when(template.values.multiGet(List.of("k0", "k1", "k2"))).thenReturn(Arrays.asList("v0", null, "v2"));
+        Mockito.when(template.values.multiGet(List.of("k3", "k4"))).thenReturn(Arrays.asList(null, "v4"));
+
+        Map<String, String> values = dataManager.getAll(this.keys(5));
+        Assertions.assertThat(values).containsExactly(Map.entry("k0", "v0"), Map.entry("k2", "v2"), Map.entry("k4", "v4"));
+        Mockito.verify(template.values, Mockito.times(2)).multiGet(Mockito.anyCollection());
+    }
+
+    @Test
+    void getAllFromJson() {
+        Mockito.when(template.values.multiGet(List.of("k0", "k1"))).thenReturn(Arrays.asList("{\"name\":\"first\"}", null));
+
+        Map<String, Item> values = dataManager.getAllFromJson(this.keys(2), Item.class);
+        Assertions.assertThat(values).containsExactly(Map.entry("k0", new Item("first")));
+
+        Mockito.when(template.values.multiGet(List.of("k0"))).thenReturn(List.of("not json"));
+        Assertions.assertThatThrownBy(() -> dataManager.getAllFromJson(List.of("k0"), Item.class)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void putAll() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String key : this.keys(4)) {
+            values.put(key, "value of " + key);
+        }
+        dataManager.putAll(values, EXPIRATION);
+
+        Assertions.assertThat(template.pipelines).isEqualTo(2);
+        InOrder inOrder = Mockito.inOrder(template.values);
+        for (String key : values.keySet()) {
+            inOrder.verify(template.values).set(key, values.get(key), EXPIRATION);
+        }
+        Mockito.verifyNoMoreInteractions(template.values);
+    }
+
+    @Test
+    void getFromMap() {
+        Mockito.when(template.hashes.multiGet("map", List.of("k0", "k1", "k2"))).thenReturn(Arrays.asList("v0", null, "v2"));
+        Mockito.when(template.hashes.multiGet("map", List.of("k3"))).thenReturn(Collections.singletonList(null));
+
+        Assertions.assertThat(dataManager.getFromMap("map", this.keys(4))).containsOnly(Map.entry("k0", "v0"), Map.entry("k2", "v2"));
+        Mockito.verify(template.hashes, Mockito.times(2)).multiGet(Mockito.eq("map"), Mockito.anyCollection());
+    }
+
+    @Test
+    void setWritesWithExpiration() {
+        dataManager.addToSet("set", "a", EXPIRATION);
+        dataManager.removeFromSet("set", List.of("a", "b", "c", "d"), EXPIRATION);
+
+        Assertions.assertThat(template.scripts).hasSize(3);
+        this.assertScript(template.scripts.get(0), "set", "SADD", "a");
+        this.assertScript(template.scripts.get(1), "set", "SREM", "a", "b", "c");
+        this.assertScript(template.scripts.get(2), "set", "SREM", "d");
+    }
+
+    @Test
+    void mapWritesWithExpiration() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("f0", "v0");
+        map.put("f1", "v1");
+        map.put("f2", "v2");
+        map.put("f3", "v3");
+        dataManager.putAsMap("map", map, EXPIRATION);
+        dataManager.removeFromMap("map", "f1", EXPIRATION);
+
+        Assertions.assertThat(template.scripts).hasSize(3);
+        this.assertScript(template.scripts.get(0), "map", "HSET", "f0", "v0", "f1", "v1", "f2", "v2");
+        this.assertScript(template.scripts.get(1), "map", "HSET", "f3", "v3");
+        this.assertScript(template.scripts.get(2), "map", "HDEL", "f1");
+    }
+
+    @Test
+    void scriptSetsExpiration() {
+        dataManager.removeFromMap("map", "f1", EXPIRATION);
+        String script = template.scripts.getFirst().script().getScriptAsString();
+        Assertions.assertThat(script).contains("redis.call(command, KEYS[1], unpack(ARGV, 3))", "redis.call('PEXPIRE', KEYS[1], ARGV[2])");
+        Assertions.assertThat(template.scripts.getFirst().script().getResultType()).isEqualTo(Long.class);
+    }
+
+    private void assertScript(ScriptCall call, String key, String command, String... args) {
+        Assertions.assertThat(call.keys()).containsExactly(key);
+        List<String> expected = new ArrayList<>();
+        expected.add(command);
+        expected.add(String.valueOf(EXPIRATION.toMillis()));
+        expected.addAll(List.of(args));
+        Assertions.assertThat(call.args()).containsExactlyElementsOf(expected);
+    }
+
+    private List<String> keys(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "k" + i).toList();
+    }
+
+    record Item(String name) {
+    }
+
+    private record ScriptCall(RedisScript<?> script, List<String> keys, List<String> args) {
+    }
+
+    /**
+     * value and hash operations are mocks, pipelines run on template itself and scripts are recorded with their decoded arguments
+     */
+    @SuppressWarnings("unchecked")
+    private static class StubTemplate extends RedisTemplate<String, Object> {
+        private final ValueOperations<String, Object> values = Mockito.mock(ValueOperations.class);
+        private final HashOperations<String, Object, Object> hashes = Mockito.mock(HashOperations.class);
+        private final List<ScriptCall> scripts = new ArrayList<>();
+        private int pipelines;
+
+        StubTemplate() {
+            this.setKeySerializer(RedisSerializer.string());
+            this.setValueSerializer(RedisSerializer.string());
+            this.setHashKeySerializer(RedisSerializer.string());
+            this.setHashValueSerializer(RedisSerializer.string());
+        }
+
+        @Override
+        public ValueOperations<String, Object> opsForValue() {
+            return values;
+        }
+
+        @Override
+        public <HK, HV> HashOperations<String, HK, HV> opsForHash() {
+            return (HashOperations<String, HK, HV>) hashes;
+        }
+
+        @Override
+        public List<Object> executePipelined(SessionCallback<?> session) {
+            pipelines++;
+            session.execute((RedisOperations<Object, Object>) (RedisOperations<?, ?>) this);
+            return List.of();
+        }
+
+        @Override
+        public <T> T execute(RedisScript<T> script, RedisSerializer<?> argsSerializer, RedisSerializer<T> resultSerializer, List<String> keys, Object... args) {
+            scripts.add(new ScriptCall(script, keys, Arrays.stream(args).map(arg -> new String((byte[]) arg, StandardCharsets.UTF_8)).toList()));
+            return null;
+        }
+    }
+}
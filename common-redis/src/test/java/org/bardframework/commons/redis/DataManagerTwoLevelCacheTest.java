@@ -0,0 +1,178 @@
+package org.bardframework.commons.redis;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class DataManagerTwoLevelCacheTest {
+
+    private final StubDataManager delegate = new StubDataManager();
+    private final Map<String, String> rawValues = new HashMap<>();
+    private final Map<String, Long> remainingMillis = new HashMap<>();
+    private final AtomicInteger pipelines = new AtomicInteger();
+    private final DataManagerTwoLevelCache cache = new DataManagerTwoLevelCache(delegate, new RedisTemplate<>(), new RedisMessageListenerContainer(), List.of("token:"), 100, Duration.ofMinutes(1)) {
+        @Override
+        protected List<Object> getWithRemainingMillis(List<String> keys) {
+            pipelines.incrementAndGet();
+            List<Object> results = new ArrayList<>();
+            for (String key : keys) {
+                String value = rawValues.get(key);
+                results.add(null == value ? null : value.getBytes(StandardCharsets.UTF_8));
+                results.add(null == value ? -2L : remainingMillis.getOrDefault(key, -1L));
+            }
+            return results;
+        }
+    };
+
+    @Test
+    void hit() {
+        rawValues.put("token:1", "value");
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("value");
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("value");
+        Assertions.assertThat(pipelines.get()).isEqualTo(1);
+        Assertions.assertThat(cache.getStats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void onlyCachedPrefixes() {
+        delegate.values.put("other:1", "value");
+        Assertions.assertThat(cache.get("other:1")).isEqualTo("value");
+        Assertions.assertThat(cache.get("other:1")).isEqualTo("value");
+        Assertions.assertThat(delegate.reads.get()).isEqualTo(2);
+        Assertions.assertThat(pipelines.get()).isZero();
+        Assertions.assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void invalidatedByMessage() {
+        rawValues.put("token:1", "value");
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("value");
+        rawValues.put("token:1", "changed");
+        cache.onMessage(new DefaultMessage(DataManagerTwoLevelCache.CHANNEL.getBytes(StandardCharsets.UTF_8), "token:1".getBytes(StandardCharsets.UTF_8)), null);
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("changed");
+        Assertions.assertThat(pipelines.get()).isEqualTo(2);
+    }
+
+    @Test
+    void cappedByRedisExpiration() throws InterruptedException {
+        rawValues.put("token:1", "value");
+        rawValues.put("token:2", "value");
+        remainingMillis.put("token:1", 50L);
+        remainingMillis.put("token:2", -2L);
+        Assertions.assertThat(cache.getAll(List.of("token:1", "token:2"))).hasSize(2);
+        Assertions.assertThat(cache.size()).isEqualTo(1);
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("value");
+        Assertions.assertThat(pipelines.get()).isEqualTo(1);
+
+        Thread.sleep(100);
+        rawValues.remove("token:1");
+        Assertions.assertThat(cache.get("token:1")).isNull();
+    }
+
+    @Test
+    void stringAndJsonOfSameKey() {
+        rawValues.put("token:1", "{\"name\":\"first\"}");
+        rawValues.put("token:2", "\"text\"");
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("{\"name\":\"first\"}");
+        Item item = cache.getFromJson("token:1", Item.class);
+        Assertions.assertThat(item).isEqualTo(new Item("first"));
+        Assertions.assertThat(cache.getFromJson("token:1", Item.class)).isSameAs(item);
+        Assertions.assertThat(cache.get("token:1")).isEqualTo("{\"name\":\"first\"}");
+
+        Assertions.assertThat(cache.getFromJson("token:2", String.class)).isEqualTo("text");
+        Assertions.assertThat(cache.get("token:2")).isEqualTo("\"text\"");
+        Assertions.assertThat(pipelines.get()).isEqualTo(2);
+    }
+
+    @Test
+    void getAllKeepsOrder() {
+        rawValues.put("token:1", "first");
+        rawValues.put("token:3", "third");
+        delegate.values.put("other:1", "other");
+        Assertions.assertThat(cache.get("token:3")).isEqualTo("third");
+
+        Map<String, String> values = cache.getAll(List.of("token:1", "other:1", "token:2", "token:3"));
+        Assertions.assertThat(values).containsExactly(Map.entry("token:1", "first"), Map.entry("other:1", "other"), Map.entry("token:3", "third"));
+        Assertions.assertThat(pipelines.get()).isEqualTo(2);
+    }
+
+    record Item(String name) {
+    }
+
+    private static class StubDataManager implements DataManager {
+        private final Map<String, String> values = new HashMap<>();
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public void put(String key, String value, Duration expiration) {
+            values.put(key, value);
+        }
+
+        @Override
+        public String get(String key) {
+            reads.incrementAndGet();
+            return values.get(key);
+        }
+
+        @Override
+        public <T> T getFromJson(String tokenId, Class<T> clazz) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putAsJson(String key, Object value, Duration expiration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean remove(String key) {
+            return null != values.remove(key);
+        }
+
+        @Override
+        public boolean isExist(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public void addToSet(String key, String value, Duration expiration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<String> getFromSet(String key) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeFromSet(String key, String value, Duration expiration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void putAsMap(String key, Map<?, ?> map, Duration expiration) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object getFromMap(String key, String hashKey) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeFromMap(String userId, String topic, Duration expiration) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.bardframework.commons.redis;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+class ValueCodecTest {
+
+    private static final Item ITEM = new Item("widget", 3, Instant.parse("2026-01-01T00:00:00Z"), List.of("a", "b"));
+
+    static Stream<ValueCodec> codecs() {
+        return Stream.of(JacksonValueCodec.json(), new SmileValueCodec(), new CborValueCodec());
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTrip(ValueCodec codec) {
+        byte[] bytes = codec.encode(ITEM);
+        Assertions.assertThat(codec.decode(bytes, Item.class)).isEqualTo(ITEM);
+    }
+
+    @Test
+    void binaryFormatsAreSmaller() {
+        int json = JacksonValueCodec.json().encode(ITEM).length;
+        Assertions.assertThat(new SmileValueCodec().encode(ITEM).length).isLessThan(json);
+        Assertions.assertThat(new CborValueCodec().encode(ITEM).length).isLessThan(json);
+    }
+
+    @Test
+    void jsonReadsStringValues() {
+        byte[] legacy = "{\"name\":\"widget\",\"count\":3,\"at\":1767225600.000000000,\"tags\":[\"a\",\"b\"],\"unknown\":1}".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertThat(JacksonValueCodec.json().decode(legacy, Item.class)).isEqualTo(ITEM);
+    }
+
+    @Test
+    void jsonWithoutOptionalModules() throws Exception {
+        URL classes = JacksonValueCodec.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, ValueCodecTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith("com.fasterxml.jackson.dataformat.")) {
+                    throw new ClassNotFoundException(name);
+                }
+                if (!name.startsWith("org.bardframework.commons.redis.")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (this.getClassLoadingLock(name)) {
+                    Class<?> loaded = this.findLoadedClass(name);
+                    return null == loaded ? this.findClass(name) : loaded;
+                }
+            }
+        }) {
+            Object codec = loader.loadClass(JacksonValueCodec.class.getName()).getMethod("json").invoke(null);
+            Object encoded = codec.getClass().getMethod("encode", Object.class).invoke(codec, List.of(1, 2));
+            Assertions.assertThat(new String((byte[]) encoded, StandardCharsets.UTF_8)).isEqualTo("[1,2]");
+        }
+    }
+
+    public record Item(String name, int count, Instant at, List<String> tags) {
+    }
+}
@@ -0,0 +1,176 @@
+package org.bardframework.commons.waf;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.bardframework.commons.utils.OsUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Adaptive limit of in flight requests of this node, using gradient of latency: each window, average latency of window
+ * is compared with long term latency, while latency grows limit is reduced, otherwise it grows by square root of limit.
+ * Optionally limit is also reduced while process cpu usage is above {@code cpuThresholdPercent}.
+ * Each priority class may use a share of limit, so low priority requests are shed first, requests that match no priority rule
+ * may use {@code defaultShare} of limit, whole limit by default.
+ * Latency samples are recorded in striped adders and limit is updated by one thread at end of each window.
+ */
+@Slf4j
+@Getter
+@Setter
+public class AdaptiveLoadShedder {
+
+    private int initialLimit = 100;
+    private int minLimit = 10;
+    private int maxLimit = 1_000;
+    /**
+     * growth of latency that is tolerated before limit is reduced, e.g. 1.5 tolerates 50% more than long term latency
+     */
+    private double tolerance = 1.5;
+    private long windowMillis = 1_000;
+    private int minWindowSamples = 10;
+    /**
+     * limit is reduced while process cpu usage is at least this percent, zero disables cpu signal
+     */
+    private int cpuThresholdPercent;
+    /**
+     * first matched rule sets priority of request
+     */
+    private List<RequestPriorityRule> priorities = List.of();
+    /**
+     * share of limit that requests matching no priority rule may use
+     */
+    private double defaultShare = 1.0;
+    private IntSupplier cpuUsage = OsUtils::getCpuUsagePercent;
+
+    @Setter(AccessLevel.NONE)
+    private volatile double limit = -1;
+    @Setter(AccessLevel.NONE)
+    private volatile double longRtt;
+    @Setter(AccessLevel.NONE)
+    private volatile RequestRuleIndex<RequestPriorityRule> priorityIndex;
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * max in flight requests in current window, limit doesn't grow while it is not used
+     */
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    @Setter(AccessLevel.NONE)
+    private final LongAdder rttSum = new LongAdder();
+    @Setter(AccessLevel.NONE)
+    private final LongAdder samples = new LongAdder();
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong windowEnd = new AtomicLong(System.nanoTime());
+    @Setter(AccessLevel.NONE)
+    private final LongAdder shedCount = new LongAdder();
+
+    /**
+     * @param path request path within application
+     * @return permit that must be closed when request is processed, or null if request must be shed
+     */
+    public ConcurrencyLimiter.Permit tryAcquire(HttpServletRequest request, String path) {
+        int allowed = Math.max(1, (int) (this.getLimit() * this.shareOf(request, path)));
+        int current;
+        do {
+            current = this.getInFlight().get();
+            if (current >= allowed) {
+                this.getShedCount().increment();
+                return null;
+            }
+        } while (!this.getInFlight().compareAndSet(current, current + 1));
+        this.getMaxInFlight().accumulateAndGet(current + 1, Math::max);
+        return new Sample(System.nanoTime());
+    }
+
+    public double getLimit() {
+        if (limit < 0) {
+            limit = this.getInitialLimit();
+        }
+        return limit;
+    }
+
+    public void setPriorities(List<RequestPriorityRule> priorities) {
+        this.priorities = priorities;
+        this.priorityIndex = priorities.isEmpty() ? null : new RequestRuleIndex<>(priorities, RequestPriorityRule::getHttpMethod, RequestPriorityRule::getPath);
+    }
+
+    private double shareOf(HttpServletRequest request, String path) {
+        RequestRuleIndex<RequestPriorityRule> index = this.getPriorityIndex();
+        if (null == index) {
+            return this.getDefaultShare();
+        }
+        for (RequestPriorityRule rule : index.candidates(request.getMethod(), path)) {
+            if (rule.match(request)) {
+                return rule.getPriority().getShare();
+            }
+        }
+        return this.getDefaultShare();
+    }
+
+    private void onSample(long rttNanos) {
+        this.getInFlight().decrementAndGet();
+        this.getRttSum().add(rttNanos);
+        this.getSamples().increment();
+        long now = System.nanoTime();
+        long end = this.getWindowEnd().get();
+        if (now - end >= 0 && this.getSamples().sum() >= this.getMinWindowSamples() && this.getWindowEnd().compareAndSet(end, now + TimeUnit.MILLISECONDS.toNanos(this.getWindowMillis()))) {
+            this.update();
+        }
+    }
+
+    private void update() {
+        long count = this.getSamples().sumThenReset();
+        long sum = this.getRttSum().sumThenReset();
+        if (count == 0) {
+            return;
+        }
+        double shortRtt = (double) sum / count;
+        double longRtt = this.getLongRtt() <= 0 ? shortRtt : this.getLongRtt() * 0.95 + shortRtt * 0.05;
+        if (longRtt > shortRtt * 2) {
+            /*
+                latency recovered, long term latency decays faster so limit can grow again
+             */
+            longRtt *= 0.95;
+        }
+        this.longRtt = longRtt;
+        double limit = this.getLimit();
+        double gradient = Math.max(0.5, Math.min(1.0, this.getTolerance() * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (this.getMaxInFlight().getAndSet(this.getInFlight().get()) < limit / 2) {
+            newLimit = Math.min(newLimit, limit);
+        }
+        if (this.getCpuThresholdPercent() > 0 && this.getCpuUsage().getAsInt() >= this.getCpuThresholdPercent()) {
+            newLimit = Math.min(newLimit, limit * 0.9);
+        }
+        newLimit = limit * 0.8 + newLimit * 0.2;
+        this.limit = Math.max(this.getMinLimit(), Math.min(this.getMaxLimit(), newLimit));
+        if (log.isDebugEnabled()) {
+            log.debug("load shedding limit [{}], short rtt [{}], long rtt [{}]", this.limit, shortRtt, longRtt);
+        }
+    }
+
+    private class Sample implements ConcurrencyLimiter.Permit {
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Sample(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLoadShedder.this.onSample(System.nanoTime() - start);
+            }
+        }
+    }
+}
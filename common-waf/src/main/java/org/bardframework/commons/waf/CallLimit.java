@@ -0,0 +1,41 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+
+/**
+ * a call that must be counted against a limit, resolved from a matched rule for a request.
+ */
+@Getter
+public class CallLimit {
+
+    private final String key;
+    private final RateLimitAlgorithm algorithm;
+    private final int limit;
+    private final long periodMillis;
+    /**
+     * name of rule that this limit is resolved from, used for metrics, null if limit is not resolved from a rule
+     */
+    private final String rule;
+    /**
+     * key that violations and bans of penalty box are counted against, same as key unless limit is sharded,
+     * so all shards of a client share one ban
+     */
+    private final String banKey;
+
+    public CallLimit(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        this(key, algorithm, limit, periodMillis, null);
+    }
+
+    public CallLimit(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis, String rule) {
+        this(key, key, algorithm, limit, periodMillis, rule);
+    }
+
+    public CallLimit(String key, String banKey, RateLimitAlgorithm algorithm, int limit, long periodMillis, String rule) {
+        this.key = key;
+        this.banKey = banKey;
+        this.algorithm = algorithm;
+        this.limit = limit;
+        this.periodMillis = periodMillis;
+        this.rule = rule;
+    }
+}
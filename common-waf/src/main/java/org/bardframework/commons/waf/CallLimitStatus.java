@@ -0,0 +1,75 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+
+import java.util.function.BiConsumer;
+
+/**
+ * result of recording a call, with quota of the limit that is reported to client, computed by same operation that counted the call.
+ */
+@Getter
+public class CallLimitStatus {
+
+    /**
+     * call is allowed, but quota is unknown, e.g. counter doesn't report quota
+     */
+    public static final CallLimitStatus ALLOWED = new CallLimitStatus(true, null, -1, -1);
+
+    private final boolean allowed;
+    /**
+     * first exceeded limit if call is rejected, otherwise limit with the least remaining calls, null if unknown
+     */
+    private final CallLimit callLimit;
+    /**
+     * remaining calls of limit, -1 if unknown
+     */
+    private final long remaining;
+    /**
+     * millis until limit is reset, or until a call may be allowed again if call is rejected, -1 if unknown
+     */
+    private final long resetMillis;
+
+    public CallLimitStatus(boolean allowed, CallLimit callLimit, long remaining, long resetMillis) {
+        this.allowed = allowed;
+        this.callLimit = callLimit;
+        this.remaining = remaining;
+        this.resetMillis = resetMillis;
+    }
+
+    public static CallLimitStatus rejected(CallLimit callLimit) {
+        return new CallLimitStatus(false, callLimit, -1, -1);
+    }
+
+    /**
+     * @return more restrictive status of two statuses of a call
+     */
+    public CallLimitStatus min(CallLimitStatus other) {
+        if (this.isAllowed() != other.isAllowed()) {
+            return this.isAllowed() ? other : this;
+        }
+        if (this.getRemaining() < 0) {
+            return other;
+        }
+        return other.getRemaining() >= 0 && other.getRemaining() < this.getRemaining() ? other : this;
+    }
+
+    /**
+     * writes Retry-After for rejected calls, and RateLimit-Limit, RateLimit-Remaining and RateLimit-Reset if quota is known.
+     * times are in seconds, rounded up.
+     */
+    public void writeHeaders(BiConsumer<String, String> headers) {
+        if (!this.isAllowed() && this.getResetMillis() >= 0) {
+            headers.accept("Retry-After", String.valueOf(toSeconds(this.getResetMillis())));
+        }
+        if (null == this.getCallLimit() || this.getRemaining() < 0) {
+            return;
+        }
+        headers.accept("RateLimit-Limit", String.valueOf(this.getCallLimit().getLimit()));
+        headers.accept("RateLimit-Remaining", String.valueOf(this.getRemaining()));
+        headers.accept("RateLimit-Reset", String.valueOf(toSeconds(this.getResetMillis())));
+    }
+
+    public static long toSeconds(long millis) {
+        return (millis + 999) / 1000;
+    }
+}
@@ -0,0 +1,110 @@
+package org.bardframework.commons.waf;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.bardframework.commons.waf.exception.ConcurrencyLimitExceedException;
+import org.bardframework.commons.waf.extractor.RequestKeyDetector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+
+/**
+ * rule that limits number of in flight requests of a path, for all requests or per unique key of request.
+ */
+@Getter
+@Setter
+@Slf4j
+public class ConcurrencyLimitChecker {
+
+    private static final String PREFIX = "CONCURRENCY_LIMITER_";
+
+    private PathPatternRequestMatcher requestMatcher;
+    private String path;
+    private HttpMethod httpMethod;
+    private int maxConcurrent;
+    /**
+     * max time a request waits for a permit when limit is reached, zero rejects immediately. request thread is blocked while waiting
+     */
+    private long queueTimeoutMillis;
+    /**
+     * if true, in flight requests of each unique key are limited, otherwise in flight requests of all clients
+     */
+    private boolean perKey;
+    @Setter(AccessLevel.NONE)
+    private String keySuffix;
+    @Autowired
+    private ConcurrencyLimiter concurrencyLimiter;
+    @Autowired
+    private RequestKeyDetector requestKeyDetector;
+
+    public ConcurrencyLimitChecker() {
+    }
+
+    public ConcurrencyLimitChecker(HttpMethod httpMethod, String path, ConcurrencyLimiter concurrencyLimiter, RequestKeyDetector requestKeyDetector, int maxConcurrent, long queueTimeoutMillis, boolean perKey) {
+        this.httpMethod = httpMethod;
+        this.path = path;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.requestKeyDetector = requestKeyDetector;
+        this.maxConcurrent = maxConcurrent;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.perKey = perKey;
+    }
+
+    /**
+     * @return permit that must be closed after request is processed, or null if request is not checked
+     */
+    public ConcurrencyLimiter.Permit tryAcquire(HttpServletRequest request, HttpServletResponse response) throws ConcurrencyLimitExceedException {
+        String key;
+        if (this.isPerKey()) {
+            String uniqueKey = this.getRequestKeyDetector().getUniqueKey(request, response);
+            if (null == uniqueKey) {
+                if (log.isWarnEnabled()) {
+                    log.warn("can't detect unique key of request [{} {}] for checking concurrency limit", request.getMethod(), request.getRequestURI());
+                }
+                return null;
+            }
+            key = PREFIX + "{" + uniqueKey + "}" + this.getKeySuffix();
+        } else {
+            key = PREFIX + this.getKeySuffix();
+        }
+        ConcurrencyLimiter.Permit permit = this.getConcurrencyLimiter().tryAcquire(key, this.getMaxConcurrent(), this.getQueueTimeoutMillis());
+        if (null == permit) {
+            throw new ConcurrencyLimitExceedException(key);
+        }
+        return permit;
+    }
+
+    public boolean match(HttpServletRequest request) {
+        return this.getRequestMatcher().matches(request);
+    }
+
+    public PathPatternRequestMatcher getRequestMatcher() {
+        if (null == requestMatcher) {
+            requestMatcher = PathPatternRequestMatcher.withDefaults().matcher(this.getHttpMethod(), this.getPath());
+        }
+        return requestMatcher;
+    }
+
+    public String getKeySuffix() {
+        if (null == keySuffix) {
+            keySuffix = (null == this.getHttpMethod() ? "" : "@" + this.getHttpMethod()) + "@" + this.getPath();
+        }
+        return keySuffix;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+        this.requestMatcher = null;
+        this.keySuffix = null;
+    }
+
+    public void setHttpMethod(HttpMethod httpMethod) {
+        this.httpMethod = httpMethod;
+        this.requestMatcher = null;
+        this.keySuffix = null;
+    }
+}
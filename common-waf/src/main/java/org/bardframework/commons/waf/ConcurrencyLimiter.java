@@ -0,0 +1,23 @@
+package org.bardframework.commons.waf;
+
+/**
+ * limits number of calls of a key that are in progress at same time.
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * @param maxConcurrent max number of permits of key that may be held at same time
+     * @param waitMillis    max time to wait for a permit when all permits are held, zero to reject immediately
+     * @return permit that must be closed when call is finished, or null if no permit is acquired
+     */
+    Permit tryAcquire(String key, int maxConcurrent, long waitMillis);
+
+    interface Permit extends AutoCloseable {
+
+        /**
+         * releases permit, calling more than once has no effect
+         */
+        @Override
+        void close();
+    }
+}
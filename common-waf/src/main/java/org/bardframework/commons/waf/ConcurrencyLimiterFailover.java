@@ -0,0 +1,54 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Applies failure policy of call counters to a remote concurrency limiter (e.g. redis), so an error of backend doesn't
+ * fail request: under {@link RequestCallCounterFailover.FailurePolicy#ALLOW} a permit that holds nothing is returned,
+ * under {@link RequestCallCounterFailover.FailurePolicy#DENY} no permit is returned and under
+ * {@link RequestCallCounterFailover.FailurePolicy#FALLBACK} permit is acquired from fallback limiter, that limits calls of this node only.
+ */
+@Slf4j
+@Getter
+public class ConcurrencyLimiterFailover implements ConcurrencyLimiter {
+
+    private static final Permit NO_OP_PERMIT = () -> {
+    };
+
+    private final ConcurrencyLimiter delegate;
+    private final RequestCallCounterFailover.FailurePolicy policy;
+    private final ConcurrencyLimiter fallback;
+    private final LogRateLimiter errorLog = new LogRateLimiter(1);
+    @Setter
+    private volatile WafMetrics metrics;
+
+    public ConcurrencyLimiterFailover(ConcurrencyLimiter delegate, RequestCallCounterFailover.FailurePolicy policy, ConcurrencyLimiter fallback) {
+        if (RequestCallCounterFailover.FailurePolicy.FALLBACK == policy && null == fallback) {
+            throw new IllegalArgumentException("fallback limiter is required for FALLBACK policy");
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Permit tryAcquire(String key, int maxConcurrent, long waitMillis) {
+        try {
+            return this.getDelegate().tryAcquire(key, maxConcurrent, waitMillis);
+        } catch (RuntimeException e) {
+            if (null != this.getMetrics()) {
+                this.getMetrics().error(this.getDelegate());
+            }
+            if (this.getErrorLog().tryAcquire()) {
+                log.error("concurrency limiter [{}] failed, [{}] similar logs suppressed, [{}] policy is applied", this.getDelegate().getClass().getName(), this.getErrorLog().drainSuppressed(), this.getPolicy(), e);
+            }
+            return switch (this.getPolicy()) {
+                case ALLOW -> NO_OP_PERMIT;
+                case DENY -> null;
+                case FALLBACK -> this.getFallback().tryAcquire(key, maxConcurrent, waitMillis);
+            };
+        }
+    }
+}
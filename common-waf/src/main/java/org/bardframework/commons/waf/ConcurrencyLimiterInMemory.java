@@ -0,0 +1,125 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In memory concurrency limiter, keys are spread over a fixed number of stripes, each stripe has a lock and keeps
+ * in flight count of its keys, so keys don't contend on a single lock and idle keys take no memory.
+ * Waiting calls of a key are bounded by {@code maxWaiting}, other calls are rejected immediately.
+ */
+@Getter
+public class ConcurrencyLimiterInMemory implements ConcurrencyLimiter {
+
+    public static final int DEFAULT_STRIPES = 64;
+    public static final int DEFAULT_MAX_WAITING = 16;
+
+    private final Stripe[] stripes;
+    private final int maxWaiting;
+
+    public ConcurrencyLimiterInMemory() {
+        this(DEFAULT_STRIPES, DEFAULT_MAX_WAITING);
+    }
+
+    public ConcurrencyLimiterInMemory(int stripes, int maxWaiting) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.maxWaiting = maxWaiting;
+    }
+
+    @Override
+    public Permit tryAcquire(String key, int maxConcurrent, long waitMillis) {
+        Stripe stripe = stripes[Math.floorMod(key.hashCode() * 0x9e3779b9, stripes.length)];
+        stripe.lock.lock();
+        Entry entry = stripe.entries.computeIfAbsent(key, k -> new Entry());
+        try {
+            if (entry.inFlight >= maxConcurrent) {
+                if (waitMillis <= 0 || entry.waiting >= this.getMaxWaiting()) {
+                    return null;
+                }
+                entry.waiting++;
+                try {
+                    long nanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+                    while (entry.inFlight >= maxConcurrent) {
+                        if (nanos <= 0) {
+                            return null;
+                        }
+                        nanos = stripe.released.awaitNanos(nanos);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                } finally {
+                    entry.waiting--;
+                }
+            }
+            entry.inFlight++;
+            return new LocalPermit(stripe, key);
+        } finally {
+            if (entry.isIdle()) {
+                stripe.entries.remove(key);
+            }
+            stripe.lock.unlock();
+        }
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * signaled on each release, waiters of other keys of stripe wake up too and wait again
+         */
+        private final Condition released = lock.newCondition();
+        private final Map<String, Entry> entries = new HashMap<>();
+    }
+
+    private static class Entry {
+        private int inFlight;
+        private int waiting;
+
+        boolean isIdle() {
+            return inFlight == 0 && waiting == 0;
+        }
+    }
+
+    private static class LocalPermit implements Permit {
+        private final Stripe stripe;
+        private final String key;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        LocalPermit(Stripe stripe, String key) {
+            this.stripe = stripe;
+            this.key = key;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            stripe.lock.lock();
+            try {
+                Entry entry = stripe.entries.get(key);
+                if (null != entry) {
+                    entry.inFlight--;
+                    if (entry.isIdle()) {
+                        stripe.entries.remove(key);
+                    }
+                }
+                stripe.released.signalAll();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cluster wide concurrency limiter, each permit is a lease in a sorted set of key with an expire time,
+ * so permits of a crashed node are freed after {@code leaseMillis}. Leases held by this node are renewed every third of
+ * {@code leaseMillis} by a background thread, so calls may be longer than lease.
+ * Waiting calls poll redis with a growing backoff until timeout, waiting blocks request thread, so wait must be short.
+ * Errors of redis are thrown to caller, wrap limiter with {@link ConcurrencyLimiterFailover} to apply a failure policy.
+ */
+@Slf4j
+@Getter
+public class ConcurrencyLimiterRedis implements ConcurrencyLimiter, AutoCloseable {
+
+    public static final long DEFAULT_LEASE_MILLIS = 15_000;
+    private static final long MAX_BACKOFF_MILLIS = 50;
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of(new ClassPathResource("org/bardframework/commons/waf/concurrency-acquire.lua"), Long.class);
+    private static final RedisScript<Long> RENEW_SCRIPT = RedisScript.of(new ClassPathResource("org/bardframework/commons/waf/concurrency-renew.lua"), Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final long leaseMillis;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService renewer;
+    private final LogRateLimiter errorLog = new LogRateLimiter(1);
+
+    public ConcurrencyLimiterRedis(RedisTemplate<String, String> redisTemplate) {
+        this(redisTemplate, DEFAULT_LEASE_MILLIS);
+    }
+
+    public ConcurrencyLimiterRedis(RedisTemplate<String, String> redisTemplate, long leaseMillis) {
+        if (leaseMillis < 3) {
+            throw new IllegalArgumentException("leaseMillis must be at least 3");
+        }
+        this.redisTemplate = redisTemplate;
+        this.leaseMillis = leaseMillis;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("concurrency-lease-renewer").daemon().factory());
+        this.renewer.scheduleWithFixedDelay(this::renewAll, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Permit tryAcquire(String key, int maxConcurrent, long waitMillis) {
+        String leaseId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        long backoff = 5;
+        while (true) {
+            Long acquired = this.getRedisTemplate().execute(ACQUIRE_SCRIPT, List.of(key), String.valueOf(maxConcurrent), String.valueOf(this.getLeaseMillis()), leaseId);
+            if (null != acquired && acquired == 1) {
+                Lease lease = new Lease(key, leaseId);
+                this.getLeases().add(lease);
+                return lease;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(Math.min(backoff, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
+    /**
+     * extends leases of each key in one script call
+     */
+    void renewAll() {
+        if (this.getLeases().isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> ids = new HashMap<>();
+        for (Lease lease : this.getLeases()) {
+            ids.computeIfAbsent(lease.key, key -> new ArrayList<>()).add(lease.id);
+        }
+        ids.forEach((key, leaseIds) -> {
+            Object[] args = new Object[leaseIds.size() + 1];
+            args[0] = String.valueOf(this.getLeaseMillis());
+            for (int i = 0; i < leaseIds.size(); i++) {
+                args[i + 1] = leaseIds.get(i);
+            }
+            try {
+                this.getRedisTemplate().execute(RENEW_SCRIPT, List.of(key), args);
+            } catch (Exception e) {
+                if (this.getErrorLog().tryAcquire()) {
+                    log.error("error renewing leases of [{}], [{}] similar logs suppressed", key, this.getErrorLog().drainSuppressed(), e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        this.getRenewer().shutdownNow();
+    }
+
+    private class Lease implements Permit {
+        private final String key;
+        private final String id;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Lease(String key, String id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            ConcurrencyLimiterRedis.this.getLeases().remove(this);
+            try {
+                ConcurrencyLimiterRedis.this.getRedisTemplate().opsForZSet().remove(key, id);
+            } catch (Exception e) {
+                log.error("error releasing lease of [{}], it is released after lease time", key, e);
+            }
+        }
+    }
+}
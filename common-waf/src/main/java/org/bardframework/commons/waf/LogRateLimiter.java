@@ -0,0 +1,41 @@
+package org.bardframework.commons.waf;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * allows at most {@code permitsPerSecond} log records per second, so logging rejected requests doesn't amplify a flood.
+ * suppressed records are counted and reported by next allowed record.
+ */
+public class LogRateLimiter {
+
+    private final int permitsPerSecond;
+    private final AtomicLong second = new AtomicLong();
+    private final AtomicInteger permits = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogRateLimiter(int permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public boolean tryAcquire() {
+        long now = System.currentTimeMillis() / 1000;
+        long current = second.get();
+        if (now != current && second.compareAndSet(current, now)) {
+            permits.set(0);
+        }
+        if (permits.incrementAndGet() <= permitsPerSecond) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * @return number of records suppressed since last call
+     */
+    public long drainSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
@@ -0,0 +1,242 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Temporary ban of abusive keys. When a key exceeds its limit {@code maxViolations} times in {@code violationPeriodMillis},
+ * it is banned for {@code banDurationMillis} and its requests are rejected locally, without calling the counter.
+ * Bans are checked against a bloom filter first, so keys that are not banned cost a few bit reads and no map lookup.
+ * Bloom filter is rebuilt periodically from live bans, so expired bans don't increase false positives.
+ */
+@Slf4j
+@Getter
+public class PenaltyBox implements AutoCloseable {
+
+    public static final String PREFIX = "PENALTY_BOX_";
+    public static final int DEFAULT_MAX_BANS = 10_000;
+    public static final long DEFAULT_REBUILD_INTERVAL_MILLIS = 10_000;
+
+    private final RequestCallCounter violationCounter;
+    private final int maxViolations;
+    private final long violationPeriodMillis;
+    private final long banDurationMillis;
+    private final int maxBans;
+    /**
+     * banned key to ban expire time
+     */
+    private final Map<String, Long> bans = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final LogRateLimiter errorLog = new LogRateLimiter(1);
+    private final LogRateLimiter banLog = new LogRateLimiter(1);
+    private volatile BloomFilter bloomFilter;
+    /**
+     * filter that is being filled by rebuild, new bans are added to it too, null if no rebuild is running
+     */
+    private volatile BloomFilter nextBloomFilter;
+
+    public PenaltyBox(RequestCallCounter violationCounter, int maxViolations, long violationPeriodMillis, long banDurationMillis) {
+        this(violationCounter, maxViolations, violationPeriodMillis, banDurationMillis, DEFAULT_MAX_BANS, DEFAULT_REBUILD_INTERVAL_MILLIS);
+    }
+
+    public PenaltyBox(RequestCallCounter violationCounter, int maxViolations, long violationPeriodMillis, long banDurationMillis, int maxBans, long rebuildIntervalMillis) {
+        if (maxViolations <= 0 || maxBans <= 0) {
+            throw new IllegalArgumentException("maxViolations and maxBans must be positive");
+        }
+        this.violationCounter = violationCounter;
+        this.maxViolations = maxViolations;
+        this.violationPeriodMillis = violationPeriodMillis;
+        this.banDurationMillis = banDurationMillis;
+        this.maxBans = maxBans;
+        this.bloomFilter = new BloomFilter(maxBans);
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waf-penalty-box-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::rebuild, rebuildIntervalMillis, rebuildIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isBanned(String key) {
+        return this.getBanRemainingMillis(key) > 0;
+    }
+
+    /**
+     * @return remaining millis of ban of key, or zero if key is not banned
+     */
+    public long getBanRemainingMillis(String key) {
+        if (!this.getBloomFilter().mightContain(key)) {
+            return 0;
+        }
+        Long until = this.getBans().get(key);
+        if (null == until) {
+            return 0;
+        }
+        long remaining = until - System.currentTimeMillis();
+        if (remaining <= 0) {
+            this.getBans().remove(key, until);
+            return 0;
+        }
+        return remaining;
+    }
+
+    /**
+     * called when key exceeded its limit, errors of counter are logged and violation is not counted,
+     * so a failing counter doesn't fail the request. Violations are not counted while counter is unavailable,
+     * so a fail closed counter doesn't ban clients. Violations of keys that are already banned are not counted.
+     *
+     * @return true if key is banned because of this violation
+     */
+    public boolean recordViolation(String key) {
+        if (this.isBanned(key) || !this.getViolationCounter().isAvailable()) {
+            return false;
+        }
+        Long violations;
+        try {
+            violations = this.getViolationCounter().incrementAndExpire(PREFIX + key, Math.toIntExact(this.getViolationPeriodMillis()), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            if (this.getErrorLog().tryAcquire()) {
+                log.error("error counting violation of [{}], [{}] similar logs suppressed", key, this.getErrorLog().drainSuppressed(), e);
+            }
+            return false;
+        }
+        if (null == violations || violations < this.getMaxViolations()) {
+            return false;
+        }
+        this.ban(key, this.getBanDurationMillis());
+        this.publish(key, this.getBanDurationMillis());
+        return true;
+    }
+
+    /**
+     * bans key on this node only, only new bans are logged, so a ban that is received back from other nodes is not logged again
+     */
+    public void ban(String key, long durationMillis) {
+        if (durationMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long previous = this.getBans().get(key);
+        if (this.getBans().size() >= this.getMaxBans() && null == previous) {
+            this.evictForCapacity();
+        }
+        this.getBans().merge(key, now + durationMillis, Math::max);
+        this.getBloomFilter().add(key);
+        /*
+            ban is added to map before reading next filter, so if rebuild started after this read, it finds ban in map
+         */
+        BloomFilter next = this.getNextBloomFilter();
+        if (null != next) {
+            next.add(key);
+        }
+        if ((null == previous || previous <= now) && this.getBanLog().tryAcquire()) {
+            log.warn("key [{}] banned for [{}] millis, [{}] similar logs suppressed", key, durationMillis, this.getBanLog().drainSuppressed());
+        }
+    }
+
+    /**
+     * propagates a new ban to other nodes, nothing by default
+     */
+    protected void publish(String key, long durationMillis) {
+    }
+
+    /**
+     * removes expired bans and rebuilds bloom filter from live bans
+     */
+    public synchronized void rebuild() {
+        try {
+            long now = System.currentTimeMillis();
+            this.getBans().values().removeIf(until -> until <= now);
+            /*
+                new filter is filled before it is published, so a live ban is never missed by checks,
+                bans added while filling are added to both filters by ban
+             */
+            BloomFilter next = new BloomFilter(this.getMaxBans());
+            this.nextBloomFilter = next;
+            this.getBans().keySet().forEach(next::add);
+            this.bloomFilter = next;
+        } catch (Exception e) {
+            log.error("error rebuilding penalty box", e);
+        } finally {
+            this.nextBloomFilter = null;
+        }
+    }
+
+    private void evictForCapacity() {
+        Iterator<Long> iterator = this.getBans().values().iterator();
+        while (this.getBans().size() >= this.getMaxBans() && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    public int size() {
+        return this.getBans().size();
+    }
+
+    @Override
+    public void close() {
+        this.getSweeper().shutdownNow();
+    }
+
+    /**
+     * bloom filter with 1% false positive rate for expected number of keys, bits are set concurrently without lock
+     */
+    static class BloomFilter {
+        private static final int HASHES = 7;
+
+        private final AtomicLongArray bits;
+        private final int size;
+
+        BloomFilter(int expectedKeys) {
+            this.size = Math.max(64, expectedKeys * 10);
+            this.bits = new AtomicLongArray((size + 63) >>> 6);
+        }
+
+        void add(String key) {
+            int h1 = key.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, size);
+                long mask = 1L << bit;
+                int index = bit >>> 6;
+                long word;
+                while (((word = bits.get(index)) & mask) == 0 && !bits.compareAndSet(index, word, word | mask)) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        boolean mightContain(String key) {
+            int h1 = key.hashCode();
+            int h2 = mix(h1);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, size);
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * second hash derived from first one, string hash code is cached so no hashing is repeated
+         */
+        private static int mix(int h) {
+            h ^= h >>> 16;
+            h *= 0x85ebca6b;
+            h ^= h >>> 13;
+            h *= 0xc2b2ae35;
+            h ^= h >>> 16;
+            return h | 1;
+        }
+    }
+}
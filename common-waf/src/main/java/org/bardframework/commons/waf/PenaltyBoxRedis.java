@@ -0,0 +1,50 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * penalty box that propagates bans to all nodes using redis pub/sub, message is ban duration and key separated by a space.
+ * duration is sent instead of expire time, so clock difference of nodes doesn't matter.
+ */
+@Slf4j
+@Getter
+public class PenaltyBoxRedis extends PenaltyBox implements MessageListener {
+
+    public static final String CHANNEL = "waf:penalty-box";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public PenaltyBoxRedis(RequestCallCounter violationCounter, int maxViolations, long violationPeriodMillis, long banDurationMillis, RedisTemplate<String, String> redisTemplate, RedisMessageListenerContainer listenerContainer) {
+        super(violationCounter, maxViolations, violationPeriodMillis, banDurationMillis);
+        this.redisTemplate = redisTemplate;
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    protected void publish(String key, long durationMillis) {
+        try {
+            this.getRedisTemplate().convertAndSend(CHANNEL, durationMillis + " " + key);
+        } catch (Exception e) {
+            log.error("error publishing ban of [{}]", key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int space = body.indexOf(' ');
+        try {
+            this.ban(body.substring(space + 1), Long.parseLong(body.substring(0, space)));
+        } catch (RuntimeException e) {
+            log.warn("invalid penalty box message [{}]", body);
+        }
+    }
+}
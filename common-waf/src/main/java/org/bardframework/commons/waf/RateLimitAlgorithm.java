@@ -0,0 +1,23 @@
+package org.bardframework.commons.waf;
+
+/**
+ * algorithm used by {@link RequestCallCounter} for deciding a call is allowed or not.
+ */
+public enum RateLimitAlgorithm {
+    /**
+     * count of calls is reset after each period, allows bursts up to two times of limit around window boundaries.
+     */
+    FIXED_WINDOW,
+    /**
+     * keeps time of each allowed call in last period, exact but memory grows with limit.
+     */
+    SLIDING_WINDOW_LOG,
+    /**
+     * estimates calls of last period by weighting previous and current fixed windows, needs only two counters.
+     */
+    SLIDING_WINDOW_COUNTER,
+    /**
+     * token bucket with capacity of limit, refilled at limit/period, implemented as GCRA so only a single timestamp is kept.
+     */
+    TOKEN_BUCKET
+}
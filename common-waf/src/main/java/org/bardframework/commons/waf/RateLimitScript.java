@@ -0,0 +1,78 @@
+package org.bardframework.commons.waf;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * lua script that evaluates a batch of {@link CallLimit}s in one call, shared by blocking and reactive redis counters.
+ */
+@UtilityClass
+public class RateLimitScript {
+
+    /**
+     * sha1 of script is computed once and cached, redis templates run it using EVALSHA and load it only on first miss.
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> SCRIPT = RedisScript.of(new ClassPathResource("org/bardframework/commons/waf/rate-limit.lua"), List.class);
+
+    public static List<String> keys(List<CallLimit> limits) {
+        List<String> keys = new ArrayList<>(limits.size());
+        for (CallLimit limit : limits) {
+            keys.add(limit.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * @return four arguments for each limit: algorithm, limit, period and a unique member used by sliding log
+     */
+    public static List<String> args(List<CallLimit> limits) {
+        List<String> args = new ArrayList<>(limits.size() * 4);
+        for (CallLimit limit : limits) {
+            args.add(limit.getAlgorithm().name());
+            args.add(String.valueOf(limit.getLimit()));
+            args.add(String.valueOf(limit.getPeriodMillis()));
+            args.add(RateLimitAlgorithm.SLIDING_WINDOW_LOG == limit.getAlgorithm() ? Long.toHexString(ThreadLocalRandom.current().nextLong()) : "");
+        }
+        return args;
+    }
+
+    /**
+     * @param result rejected index, reported index, remaining and reset of reported limit, returned by script
+     * @throws IllegalStateException if result is missing or incomplete, so it is handled as a failure of counter, not as an allowed call
+     */
+    public static CallLimitStatus status(List<?> result, List<CallLimit> limits) {
+        if (null == result || result.size() < 4) {
+            throw new IllegalStateException("unexpected result of rate limit script " + result);
+        }
+        boolean allowed = ((Number) result.get(0)).intValue() == 0;
+        CallLimit reported = limits.get(((Number) result.get(1)).intValue() - 1);
+        return new CallLimitStatus(allowed, reported, ((Number) result.get(2)).longValue(), ((Number) result.get(3)).longValue());
+    }
+
+    /**
+     * keys of a script must be in same slot on redis cluster, so limits are split to runs of consecutive limits
+     * that their keys are in same slot, order of limits is kept.
+     * keys of a client share a hash tag, so usually there is a single group, unless limits are sharded.
+     */
+    public static List<List<CallLimit>> groupBySlot(List<CallLimit> limits) {
+        List<List<CallLimit>> groups = new ArrayList<>();
+        int start = 0;
+        while (start < limits.size()) {
+            int slot = ClusterSlotHashUtil.calculateSlot(limits.get(start).getKey());
+            int end = start + 1;
+            while (end < limits.size() && ClusterSlotHashUtil.calculateSlot(limits.get(end).getKey()) == slot) {
+                end++;
+            }
+            groups.add(limits.subList(start, end));
+            start = end;
+        }
+        return groups;
+    }
+}
@@ -1,10 +1,85 @@
 package org.bardframework.commons.waf;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public interface RequestCallCounter {
 
     Long increment(String key);
 
+    /**
+     * @return false while backend of counter is known to be unhealthy, counts are not reliable then,
+     * e.g. violations should not be counted
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
     void expire(String key, int expiration, TimeUnit unit);
+
+    /**
+     * increments counter of given key and sets its expiration on first hit.
+     * implementations should do both in a single atomic operation, default implementation makes two separate calls.
+     */
+    default Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+        Long count = this.increment(key);
+        if (count == 1) {
+            this.expire(key, expiration, unit);
+        }
+        return count;
+    }
+
+    /**
+     * records a call of given key using given algorithm.
+     * default implementation only supports {@link RateLimitAlgorithm#FIXED_WINDOW}.
+     *
+     * @return true if call is allowed, false if limit is exceeded
+     */
+    default boolean tryAcquire(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        if (RateLimitAlgorithm.FIXED_WINDOW != algorithm) {
+            throw new UnsupportedOperationException(algorithm + " algorithm not supported by " + this.getClass().getName());
+        }
+        return this.incrementAndExpire(key, Math.toIntExact(periodMillis), TimeUnit.MILLISECONDS) <= limit;
+    }
+
+    /**
+     * records a call like {@link #tryAcquire}, and returns quota of limit computed by same operation.
+     * default implementation doesn't know quota.
+     */
+    default CallLimitStatus tryAcquireWithStatus(CallLimit limit) {
+        return this.tryAcquire(limit.getKey(), limit.getAlgorithm(), limit.getLimit(), limit.getPeriodMillis()) ? CallLimitStatus.ALLOWED : CallLimitStatus.rejected(limit);
+    }
+
+    /**
+     * records a call for each of given limits in order, and stops at first limit that is exceeded,
+     * so a rejected call is not counted by remaining limits.
+     * implementations should evaluate all limits in a single round trip, default implementation calls {@link #tryAcquire} for each limit.
+     *
+     * @return index of first exceeded limit, or -1 if call is allowed by all limits
+     */
+    default int tryAcquireAll(List<CallLimit> limits) {
+        for (int i = 0; i < limits.size(); i++) {
+            CallLimit limit = limits.get(i);
+            if (!this.tryAcquire(limit.getKey(), limit.getAlgorithm(), limit.getLimit(), limit.getPeriodMillis())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * same as {@link #tryAcquireAll}, also returns quota of first exceeded limit, or of limit with the least remaining calls if call is allowed.
+     * default implementation calls {@link #tryAcquireWithStatus} for each limit.
+     */
+    default CallLimitStatus tryAcquireAllWithStatus(List<CallLimit> limits) {
+        CallLimitStatus result = CallLimitStatus.ALLOWED;
+        for (CallLimit limit : limits) {
+            CallLimitStatus status = this.tryAcquireWithStatus(limit);
+            if (!status.isAllowed()) {
+                return status;
+            }
+            result = result.min(status);
+        }
+        return result;
+    }
 }
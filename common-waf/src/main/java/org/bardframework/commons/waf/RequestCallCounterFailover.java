@@ -0,0 +1,246 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker around a remote counter (e.g. redis). After {@code failureThreshold} consecutive failures or timeouts,
+ * circuit opens and calls are answered by failure policy without calling delegate, so an unhealthy backend costs nothing per request.
+ * After {@code openMillis} a single call probes delegate, on success circuit closes, otherwise it stays open for another period.
+ * Policy applies to limit decisions, raw counts ({@link #increment}, {@link #incrementAndExpire}) are not counted (zero)
+ * under {@link FailurePolicy#ALLOW} and {@link FailurePolicy#DENY}, and {@link #isAvailable()} is false while circuit is open,
+ * so violations are not counted and clients are not banned because of an outage.
+ * Each call waits at most {@code timeoutMillis}, so a hung backend can't stall request threads before circuit opens.
+ * For that each call is handed to a new virtual thread, that costs a few microseconds and an allocation per call;
+ * zero timeout runs calls on caller thread, then timeout of redis client (e.g. lettuce command timeout) must be short.
+ */
+@Slf4j
+@Getter
+public class RequestCallCounterFailover implements RequestCallCounter, AutoCloseable {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 50;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 5_000;
+
+    private final RequestCallCounter delegate;
+    private final FailurePolicy policy;
+    /**
+     * used when policy is {@link FailurePolicy#FALLBACK}, e.g. in memory counter, that counts calls of this node only
+     */
+    private final RequestCallCounter fallback;
+    private final long timeoutMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final ExecutorService executor;
+    private final AtomicInteger failures = new AtomicInteger();
+    /**
+     * zero while circuit is closed
+     */
+    private final AtomicLong openUntil = new AtomicLong();
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final LogRateLimiter errorLog = new LogRateLimiter(1);
+    /**
+     * latency and errors of delegate are recorded here, because errors are not propagated to caller
+     */
+    private volatile WafMetrics metrics;
+
+    public RequestCallCounterFailover(RequestCallCounter delegate, RequestCallCounter fallback) {
+        this(delegate, FailurePolicy.FALLBACK, fallback, DEFAULT_TIMEOUT_MILLIS, DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    public RequestCallCounterFailover(RequestCallCounter delegate, FailurePolicy policy, RequestCallCounter fallback, long timeoutMillis, int failureThreshold, long openMillis) {
+        if (FailurePolicy.FALLBACK == policy && null == fallback) {
+            throw new IllegalArgumentException("fallback counter is required for FALLBACK policy");
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        this.fallback = fallback;
+        this.timeoutMillis = timeoutMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.executor = timeoutMillis > 0 ? Executors.newVirtualThreadPerTaskExecutor() : null;
+    }
+
+    @Override
+    public Long increment(String key) {
+        return this.call(() -> this.getDelegate().increment(key), () -> switch (this.getPolicy()) {
+            case ALLOW, DENY -> 0L;
+            case FALLBACK -> this.getFallback().increment(key);
+        });
+    }
+
+    @Override
+    public void expire(String key, int expiration, TimeUnit unit) {
+        this.call(() -> {
+            this.getDelegate().expire(key, expiration, unit);
+            return null;
+        }, () -> {
+            if (FailurePolicy.FALLBACK == this.getPolicy()) {
+                this.getFallback().expire(key, expiration, unit);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+        return this.call(() -> this.getDelegate().incrementAndExpire(key, expiration, unit), () -> switch (this.getPolicy()) {
+            case ALLOW, DENY -> 0L;
+            case FALLBACK -> this.getFallback().incrementAndExpire(key, expiration, unit);
+        });
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        return this.call(() -> this.getDelegate().tryAcquire(key, algorithm, limit, periodMillis), () -> switch (this.getPolicy()) {
+            case ALLOW -> true;
+            case DENY -> false;
+            case FALLBACK -> this.getFallback().tryAcquire(key, algorithm, limit, periodMillis);
+        });
+    }
+
+    @Override
+    public CallLimitStatus tryAcquireWithStatus(CallLimit limit) {
+        return this.call(() -> this.getDelegate().tryAcquireWithStatus(limit), () -> switch (this.getPolicy()) {
+            case ALLOW -> CallLimitStatus.ALLOWED;
+            case DENY -> CallLimitStatus.rejected(limit);
+            case FALLBACK -> this.getFallback().tryAcquireWithStatus(limit);
+        });
+    }
+
+    @Override
+    public int tryAcquireAll(List<CallLimit> limits) {
+        return this.call(() -> this.getDelegate().tryAcquireAll(limits), () -> switch (this.getPolicy()) {
+            case ALLOW -> -1;
+            case DENY -> limits.isEmpty() ? -1 : 0;
+            case FALLBACK -> this.getFallback().tryAcquireAll(limits);
+        });
+    }
+
+    @Override
+    public CallLimitStatus tryAcquireAllWithStatus(List<CallLimit> limits) {
+        return this.call(() -> this.getDelegate().tryAcquireAllWithStatus(limits), () -> switch (this.getPolicy()) {
+            case ALLOW -> CallLimitStatus.ALLOWED;
+            case DENY -> limits.isEmpty() ? CallLimitStatus.ALLOWED : CallLimitStatus.rejected(limits.get(0));
+            case FALLBACK -> this.getFallback().tryAcquireAllWithStatus(limits);
+        });
+    }
+
+    public void setMetrics(WafMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return !this.isOpen();
+    }
+
+    public boolean isOpen() {
+        return this.getOpenUntil().get() != 0;
+    }
+
+    private <T> T call(Supplier<T> primary, Supplier<T> secondary) {
+        boolean probe = false;
+        long until = this.getOpenUntil().get();
+        if (until != 0) {
+            /*
+                half open, only one call probes delegate
+             */
+            if (System.currentTimeMillis() < until || !this.getProbing().compareAndSet(false, true)) {
+                return secondary.get();
+            }
+            probe = true;
+        }
+        WafMetrics metrics = this.getMetrics();
+        long start = null == metrics ? 0 : System.nanoTime();
+        try {
+            T result = this.invoke(primary);
+            this.onSuccess();
+            return result;
+        } catch (Exception e) {
+            if (null != metrics) {
+                metrics.error(this.getDelegate());
+            }
+            this.onFailure(probe, e);
+            return secondary.get();
+        } finally {
+            if (null != metrics) {
+                metrics.recordLatency(this.getDelegate(), System.nanoTime() - start);
+            }
+            if (probe) {
+                this.getProbing().set(false);
+            }
+        }
+    }
+
+    private <T> T invoke(Supplier<T> primary) throws Exception {
+        if (null == this.getExecutor()) {
+            return primary.get();
+        }
+        Future<T> future = this.getExecutor().submit(primary::get);
+        try {
+            return future.get(this.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private void onSuccess() {
+        if (this.getFailures().get() != 0) {
+            this.getFailures().set(0);
+        }
+        if (this.getOpenUntil().get() != 0) {
+            this.getOpenUntil().set(0);
+            log.info("call counter [{}] recovered, circuit closed", this.getDelegate().getClass().getName());
+        }
+    }
+
+    private void onFailure(boolean probe, Exception e) {
+        if (this.getErrorLog().tryAcquire()) {
+            log.error("call counter [{}] failed, [{}] similar logs suppressed, [{}] policy is applied", this.getDelegate().getClass().getName(), this.getErrorLog().drainSuppressed(), this.getPolicy(), e);
+        }
+        long now = System.currentTimeMillis();
+        if (probe) {
+            this.getOpenUntil().set(now + this.getOpenMillis());
+        } else if (this.getFailures().incrementAndGet() >= this.getFailureThreshold() && this.getOpenUntil().compareAndSet(0, now + this.getOpenMillis())) {
+            log.warn("call counter [{}] is unhealthy, circuit opened for [{}] millis", this.getDelegate().getClass().getName(), this.getOpenMillis());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (null != this.getExecutor()) {
+            this.getExecutor().shutdownNow();
+        }
+    }
+
+    public enum FailurePolicy {
+        /**
+         * all calls are allowed (fail open)
+         */
+        ALLOW,
+        /**
+         * all calls are rejected (fail closed)
+         */
+        DENY,
+        /**
+         * calls are counted by fallback counter
+         */
+        FALLBACK
+    }
+}
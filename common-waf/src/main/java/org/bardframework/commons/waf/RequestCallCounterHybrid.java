@@ -0,0 +1,233 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Approximate call counter for high volume, low precision limits. Fixed window calls are counted locally in striped counters
+ * and decided using local count plus last known global count, local deltas are flushed to redis in one pipeline every
+ * {@code flushIntervalMillis}, or sooner when unflushed local count of a key reaches its error budget.
+ * Over admission of each window is bounded by {@code errorBudget * limit} per node.
+ * Other algorithms are not approximated and delegated to {@link RequestCallCounterRedis}, or given delegate.
+ */
+@Slf4j
+@Getter
+public class RequestCallCounterHybrid implements RequestCallCounter, AutoCloseable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+    public static final double DEFAULT_ERROR_BUDGET = 0.01;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RequestCallCounter delegate;
+    /**
+     * fraction of limit that each node may count locally without flushing to redis
+     */
+    private final double errorBudget;
+    private final Map<String, LocalWindow> windows = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    public RequestCallCounterHybrid(RedisTemplate<String, String> redisTemplate) {
+        this(redisTemplate, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_ERROR_BUDGET);
+    }
+
+    public RequestCallCounterHybrid(RedisTemplate<String, String> redisTemplate, long flushIntervalMillis, double errorBudget) {
+        this(redisTemplate, new RequestCallCounterRedis(redisTemplate), flushIntervalMillis, errorBudget);
+    }
+
+    /**
+     * @param delegate counts algorithms other than fixed window, and calls of {@link #increment(String)} and {@link #expire(String, int, TimeUnit)}
+     */
+    public RequestCallCounterHybrid(RedisTemplate<String, String> redisTemplate, RequestCallCounter delegate, long flushIntervalMillis, double errorBudget) {
+        if (errorBudget < 0 || errorBudget > 1) {
+            throw new IllegalArgumentException("errorBudget must be between 0 and 1");
+        }
+        this.redisTemplate = redisTemplate;
+        this.delegate = delegate;
+        this.errorBudget = errorBudget;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waf-call-counter-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Long increment(String key) {
+        return this.getDelegate().increment(key);
+    }
+
+    @Override
+    public void expire(String key, int expiration, TimeUnit unit) {
+        this.getDelegate().expire(key, expiration, unit);
+    }
+
+    @Override
+    public Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+        return this.getDelegate().incrementAndExpire(key, expiration, unit);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        if (RateLimitAlgorithm.FIXED_WINDOW != algorithm) {
+            return this.getDelegate().tryAcquire(key, algorithm, limit, periodMillis);
+        }
+        return this.tryAcquireWithStatus(new CallLimit(key, algorithm, limit, periodMillis)).isAllowed();
+    }
+
+    /**
+     * quota of fixed windows is computed from local count and last known global count, so it is approximate too.
+     */
+    @Override
+    public CallLimitStatus tryAcquireWithStatus(CallLimit callLimit) {
+        if (RateLimitAlgorithm.FIXED_WINDOW != callLimit.getAlgorithm()) {
+            return this.getDelegate().tryAcquireWithStatus(callLimit);
+        }
+        String key = callLimit.getKey();
+        int limit = callLimit.getLimit();
+        long periodMillis = callLimit.getPeriodMillis();
+        long now = System.currentTimeMillis();
+        long index = now / periodMillis;
+        LocalWindow window = this.getWindows().get(key);
+        if (null == window || window.index != index) {
+            window = this.getWindows().compute(key, (k, current) -> null == current || current.index != index ? new LocalWindow(k, index, periodMillis) : current);
+        }
+        window.local.increment();
+        long localCount = window.local.sum();
+        if (localCount - window.flushed >= Math.max(1, (long) (limit * this.getErrorBudget())) && window.flushing.compareAndSet(false, true)) {
+            LocalWindow toFlush = window;
+            this.getFlusher().execute(() -> this.flush(List.of(toFlush)));
+        }
+        long count = window.global + localCount;
+        return new CallLimitStatus(count <= limit, callLimit, Math.max(limit - count, 0), (index + 1) * periodMillis - now);
+    }
+
+    /**
+     * flushes unflushed counts of all windows, and removes finished windows
+     */
+    public void flushAll() {
+        try {
+            long now = System.currentTimeMillis();
+            List<LocalWindow> toFlush = new ArrayList<>();
+            for (LocalWindow window : this.getWindows().values()) {
+                if (window.index < now / window.periodMillis) {
+                    this.getWindows().remove(window.key, window);
+                } else if (window.local.sum() > window.flushed && window.flushing.compareAndSet(false, true)) {
+                    toFlush.add(window);
+                }
+            }
+            if (!toFlush.isEmpty()) {
+                this.flush(toFlush);
+            }
+        } catch (Exception e) {
+            log.error("error flushing call counters to redis", e);
+        }
+    }
+
+    /**
+     * sends delta of given windows in one pipeline, windows must be marked as flushing by caller.
+     */
+    private void flush(List<LocalWindow> windows) {
+        List<String> redisKeys = new ArrayList<>(windows.size());
+        long[] deltas = new long[windows.size()];
+        long[] expireMillis = new long[windows.size()];
+        for (int i = 0; i < windows.size(); i++) {
+            LocalWindow window = windows.get(i);
+            redisKeys.add(window.redisKey);
+            deltas[i] = window.local.sum() - window.flushed;
+            expireMillis[i] = window.periodMillis * 2;
+            window.flushed += deltas[i];
+        }
+        try {
+            List<Object> results = this.incrementAll(redisKeys, deltas, expireMillis);
+            for (int i = 0; i < windows.size(); i++) {
+                Object global = results.get(i * 2);
+                if (global instanceof Long) {
+                    windows.get(i).global = (Long) global - windows.get(i).flushed;
+                }
+            }
+        } catch (Exception e) {
+            log.error("error flushing [{}] call counters to redis", windows.size(), e);
+            /*
+                deltas are sent again on next flush
+             */
+            for (int i = 0; i < windows.size(); i++) {
+                windows.get(i).flushed -= deltas[i];
+            }
+        } finally {
+            windows.forEach(window -> window.flushing.set(false));
+        }
+    }
+
+    /**
+     * increments each key by its delta and sets its expiration, in one pipeline
+     *
+     * @return pipeline results, count of key after increment and result of expire for each key
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Object> incrementAll(List<String> redisKeys, long[] deltas, long[] expireMillis) {
+        return this.getRedisTemplate().executePipelined(new SessionCallback<>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> stringOperations = (RedisOperations<String, String>) operations;
+                for (int i = 0; i < redisKeys.size(); i++) {
+                    stringOperations.opsForValue().increment(redisKeys.get(i), deltas[i]);
+                    stringOperations.expire(redisKeys.get(i), expireMillis[i], TimeUnit.MILLISECONDS);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        this.getFlusher().shutdown();
+        if (this.getFlusher().awaitTermination(1, TimeUnit.SECONDS)) {
+            this.flushAll();
+        }
+    }
+
+    /**
+     * state of a key in one fixed window, only flusher thread changes {@code flushed} and {@code global}.
+     */
+    private static class LocalWindow {
+        private final String key;
+        /**
+         * windows are aligned to epoch, so all nodes share same redis key for a window
+         */
+        private final String redisKey;
+        private final long index;
+        private final long periodMillis;
+        private final LongAdder local = new LongAdder();
+        private final AtomicBoolean flushing = new AtomicBoolean();
+        /**
+         * part of local count that is sent to redis
+         */
+        private volatile long flushed;
+        /**
+         * last known count of other nodes in this window, redis count minus flushed part of local count
+         */
+        private volatile long global;
+
+        LocalWindow(String key, long index, long periodMillis) {
+            this.key = key;
+            this.redisKey = key + ":" + index;
+            this.index = index;
+            this.periodMillis = periodMillis;
+        }
+    }
+}
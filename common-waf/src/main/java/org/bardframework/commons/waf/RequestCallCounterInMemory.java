@@ -1,37 +1,322 @@
 package org.bardframework.commons.waf;
 
-import java.util.Map;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * In memory call counter, each key keeps its state and expire time in a single entry, so fixed window increments are atomic
+ * without any lock. Number of keys is bounded by {@code maxEntries} and expired entries are evicted by a background sweeper.
+ * When map is full, expired entries are swept and if there is still no room, new keys are refused: limit decisions fail closed
+ * and counts are saturated ({@link Long#MAX_VALUE}), so callers deny them too. Live windows are never evicted,
+ * so a flood of distinct keys can't reset counters of other clients.
+ */
+@Slf4j
+@Getter
+public class RequestCallCounterInMemory implements RequestCallCounter, AutoCloseable {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    public static final long DEFAULT_SWEEP_INTERVAL_MILLIS = 1_000;
+    /**
+     * minimum time between two sweeps that are triggered by a full map, so a flood of new keys doesn't scan map per call
+     */
+    public static final long CAPACITY_SWEEP_INTERVAL_MILLIS = 100;
 
-public class RequestCallCounterInMemory implements RequestCallCounter {
-    private final Map<String, Long> callCounts = new ConcurrentHashMap<>();
-    private final Map<String, Long> expireTimes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    /**
+     * calls that found a live entry of their key
+     */
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder refusedCount = new LongAdder();
+    private final AtomicLong lastCapacitySweep = new AtomicLong();
+    private final long sweepIntervalMillis;
+    private final ScheduledExecutorService sweeper;
+
+    public RequestCallCounterInMemory() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_SWEEP_INTERVAL_MILLIS);
+    }
+
+    public RequestCallCounterInMemory(int maxEntries, long sweepIntervalMillis) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waf-call-counter-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sweeper.scheduleWithFixedDelay(this::evictExpired, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+    }
 
     @Override
     public Long increment(String key) {
-        Long expireTime = this.expireTimes.get(key);
-        /*
-            first time key insert
-         */
-        if (null == expireTime) {
-            this.callCounts.put(key, 1L);
-            return 1L;
+        FixedWindow window = this.getOrCreate(key, FixedWindow.class, now -> new FixedWindow(Long.MAX_VALUE));
+        return null == window ? Long.MAX_VALUE : window.getCount().incrementAndGet();
+    }
+
+    @Override
+    public void expire(String key, int expiration, TimeUnit unit) {
+        Entry entry = this.getEntries().get(key);
+        if (null != entry) {
+            entry.setExpireTime(System.currentTimeMillis() + unit.toMillis(expiration));
         }
-        /*
-            key exist, but expired
-         */
-        if (expireTime <= System.currentTimeMillis()) {
-            this.callCounts.put(key, 1L);
-            return 1L;
+    }
+
+    /**
+     * expire time of a new window is set at creation, so there is no moment that window is alive without expire time.
+     */
+    @Override
+    public Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+        long periodMillis = unit.toMillis(expiration);
+        FixedWindow window = this.getOrCreate(key, FixedWindow.class, now -> new FixedWindow(now + periodMillis));
+        return null == window ? Long.MAX_VALUE : window.getCount().incrementAndGet();
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        if (RateLimitAlgorithm.FIXED_WINDOW == algorithm) {
+            return this.incrementAndExpire(key, Math.toIntExact(periodMillis), TimeUnit.MILLISECONDS) <= limit;
         }
-        Long incrementedValue = this.callCounts.get(key) + 1;
-        this.callCounts.put(key, incrementedValue);
-        return incrementedValue;
+        return this.tryAcquireWithStatus(new CallLimit(key, algorithm, limit, periodMillis)).isAllowed();
     }
 
     @Override
-    public void expire(String key, int expiration, TimeUnit unit) {
-        this.expireTimes.put(key, System.currentTimeMillis() + unit.toMillis(expiration));
+    public CallLimitStatus tryAcquireWithStatus(CallLimit callLimit) {
+        String key = callLimit.getKey();
+        int limit = callLimit.getLimit();
+        long periodMillis = callLimit.getPeriodMillis();
+        Entry entry = switch (callLimit.getAlgorithm()) {
+            case FIXED_WINDOW -> this.getOrCreate(key, FixedWindow.class, now -> new FixedWindow(now + periodMillis));
+            case SLIDING_WINDOW_LOG -> this.getOrCreate(key, SlidingWindowLog.class, now -> new SlidingWindowLog(limit, now + periodMillis));
+            case SLIDING_WINDOW_COUNTER -> this.getOrCreate(key, SlidingWindowCounter.class, now -> new SlidingWindowCounter(now + periodMillis));
+            case TOKEN_BUCKET -> this.getOrCreate(key, TokenBucket.class, now -> new TokenBucket(now + periodMillis));
+        };
+        if (null == entry) {
+            /*
+                key is refused, client retries after next sweep
+             */
+            return new CallLimitStatus(false, callLimit, 0, this.getSweepIntervalMillis());
+        }
+        return entry.tryAcquire(callLimit);
+    }
+
+    /**
+     * @param factory creates a new entry for given current time, called if there is no entry for key, or it is expired.
+     * @return entry of key, or null if key is new and map is full
+     */
+    private <T extends Entry> T getOrCreate(String key, Class<T> type, LongFunction<T> factory) {
+        long now = System.currentTimeMillis();
+        Entry entry = this.getEntries().get(key);
+        if (null == entry || entry.isExpired(now) || !type.isInstance(entry)) {
+            if (null == entry && this.getEntries().size() >= this.getMaxEntries() && !this.makeRoom(now)) {
+                this.getRefusedCount().increment();
+                return null;
+            }
+            entry = this.getEntries().compute(key, (k, current) -> null == current || current.isExpired(now) || !type.isInstance(current) ? factory.apply(now) : current);
+        } else {
+            this.getHitCount().increment();
+        }
+        return type.cast(entry);
+    }
+
+    public int size() {
+        return this.getEntries().size();
+    }
+
+    /**
+     * remove entries that their period is finished
+     */
+    public void evictExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<Entry> iterator = this.getEntries().values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().isExpired(now)) {
+                    iterator.remove();
+                    this.getEvictionCount().increment();
+                }
+            }
+        } catch (Exception e) {
+            log.error("error evicting expired call counter entries", e);
+        }
+    }
+
+    /**
+     * called when map is full, expired entries are swept, at most once per {@link #CAPACITY_SWEEP_INTERVAL_MILLIS} by a single caller.
+     *
+     * @return true if there is room for a new key
+     */
+    private boolean makeRoom(long now) {
+        long last = this.getLastCapacitySweep().get();
+        if (now - last >= CAPACITY_SWEEP_INTERVAL_MILLIS && this.getLastCapacitySweep().compareAndSet(last, now)) {
+            this.evictExpired();
+        }
+        return this.getEntries().size() < this.getMaxEntries();
+    }
+
+    @Override
+    public void close() {
+        this.getSweeper().shutdownNow();
+    }
+
+    protected abstract static class Entry {
+        protected volatile long expireTime;
+
+        abstract CallLimitStatus tryAcquire(CallLimit callLimit);
+
+        boolean isExpired(long now) {
+            return this.expireTime <= now;
+        }
+
+        void setExpireTime(long expireTime) {
+            this.expireTime = expireTime;
+        }
+    }
+
+    @Getter
+    protected static class FixedWindow extends Entry {
+        private final AtomicLong count = new AtomicLong();
+
+        /**
+         * @param expireTime Long.MAX_VALUE until expire called, if window created by increment
+         */
+        FixedWindow(long expireTime) {
+            this.expireTime = expireTime;
+        }
+
+        @Override
+        CallLimitStatus tryAcquire(CallLimit callLimit) {
+            long count = this.count.incrementAndGet();
+            long reset = Math.max(this.expireTime - System.currentTimeMillis(), 0);
+            return new CallLimitStatus(count <= callLimit.getLimit(), callLimit, Math.max(callLimit.getLimit() - count, 0), reset);
+        }
+    }
+
+    /**
+     * keeps time of last {@code limit} allowed calls in a ring buffer
+     */
+    protected static class SlidingWindowLog extends Entry {
+        private long[] calls;
+        private int head;
+        private int size;
+
+        SlidingWindowLog(int limit, long expireTime) {
+            this.calls = new long[Math.max(limit, 0)];
+            this.expireTime = expireTime;
+        }
+
+        @Override
+        synchronized CallLimitStatus tryAcquire(CallLimit callLimit) {
+            int limit = callLimit.getLimit();
+            long periodMillis = callLimit.getPeriodMillis();
+            if (calls.length != Math.max(limit, 0)) {
+                /*
+                    limit of rule changed
+                 */
+                this.calls = new long[Math.max(limit, 0)];
+                this.head = 0;
+                this.size = 0;
+            }
+            long now = System.currentTimeMillis();
+            while (size > 0 && calls[head] <= now - periodMillis) {
+                head = (head + 1) % calls.length;
+                size--;
+            }
+            /*
+                a call is freed when oldest call leaves window
+             */
+            long reset = size > 0 ? calls[head] + periodMillis - now : periodMillis;
+            if (size >= calls.length) {
+                return new CallLimitStatus(false, callLimit, 0, reset);
+            }
+            calls[(head + size) % calls.length] = now;
+            size++;
+            this.expireTime = now + periodMillis;
+            return new CallLimitStatus(true, callLimit, calls.length - size, reset);
+        }
+    }
+
+    protected static class SlidingWindowCounter extends Entry {
+        private long index = -1;
+        private long current;
+        private long previous;
+
+        SlidingWindowCounter(long expireTime) {
+            this.expireTime = expireTime;
+        }
+
+        @Override
+        synchronized CallLimitStatus tryAcquire(CallLimit callLimit) {
+            int limit = callLimit.getLimit();
+            long periodMillis = callLimit.getPeriodMillis();
+            long now = System.currentTimeMillis();
+            long nowIndex = now / periodMillis;
+            if (nowIndex != index) {
+                previous = nowIndex == index + 1 ? current : 0;
+                current = 0;
+                index = nowIndex;
+            }
+            long reset = periodMillis - now % periodMillis;
+            double estimate = previous * ((double) reset / periodMillis) + current;
+            if (estimate >= limit) {
+                return new CallLimitStatus(false, callLimit, 0, reset);
+            }
+            current++;
+            this.expireTime = (nowIndex + 2) * periodMillis;
+            return new CallLimitStatus(true, callLimit, Math.max((long) (limit - estimate - 1), 0), reset);
+        }
+    }
+
+    /**
+     * GCRA, only theoretical arrival time of next call is kept and updated using CAS.
+     */
+    protected static class TokenBucket extends Entry {
+        private final AtomicLong theoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+
+        TokenBucket(long expireTime) {
+            this.expireTime = expireTime;
+        }
+
+        @Override
+        CallLimitStatus tryAcquire(CallLimit callLimit) {
+            int limit = callLimit.getLimit();
+            long periodMillis = callLimit.getPeriodMillis();
+            if (limit <= 0) {
+                return new CallLimitStatus(false, callLimit, 0, periodMillis);
+            }
+            long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+            long interval = periodNanos / limit;
+            while (true) {
+                long now = System.nanoTime();
+                long tat = theoreticalArrivalTime.get();
+                long newTat = (tat == Long.MIN_VALUE || tat - now < 0 ? now : tat) + interval;
+                if (newTat - now > periodNanos) {
+                    return new CallLimitStatus(false, callLimit, 0, toMillisCeil(newTat - now - periodNanos));
+                }
+                if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                    this.expireTime = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(newTat - now) + 1;
+                    /*
+                        bucket is full again when theoretical arrival time is reached
+                     */
+                    return new CallLimitStatus(true, callLimit, (periodNanos - (newTat - now)) / interval, toMillisCeil(newTat - now));
+                }
+            }
+        }
+
+        private static long toMillisCeil(long nanos) {
+            return (nanos + 999_999) / 1_000_000;
+        }
     }
 }
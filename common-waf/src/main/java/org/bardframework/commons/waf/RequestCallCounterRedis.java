@@ -1,16 +1,40 @@
 package org.bardframework.commons.waf;
 
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 public class RequestCallCounterRedis implements RequestCallCounter {
 
-    private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * sha1 of script is computed once and cached, redis template runs it using EVALSHA and loads it only on first miss.
+     */
+    private static final RedisScript<Long> FIXED_WINDOW_SCRIPT = RedisScript.of(new ClassPathResource("org/bardframework/commons/waf/fixed-window.lua"), Long.class);
 
+    private final RedisTemplate<String, String> redisTemplate;
+    /**
+     * if true, increment and expire of fixed window are done in one round trip using lua script,
+     * other algorithms always use scripts.
+     */
+    private final boolean scriptEnabled;
+    /**
+     * on redis cluster, keys of a script must be in same slot, so limits are evaluated in groups of same slot keys.
+     * detected lazily using first connection.
+     */
+    private volatile Boolean cluster;
 
     public RequestCallCounterRedis(RedisTemplate<String, String> redisTemplate) {
+        this(redisTemplate, true);
+    }
+
+    public RequestCallCounterRedis(RedisTemplate<String, String> redisTemplate, boolean scriptEnabled) {
         this.redisTemplate = redisTemplate;
+        this.scriptEnabled = scriptEnabled;
     }
 
     @Override
@@ -22,4 +46,71 @@ public class RequestCallCounterRedis implements RequestCallCounter {
     public void expire(String key, int expiration, TimeUnit unit) {
         redisTemplate.expire(key, expiration, unit);
     }
+
+    @Override
+    public Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+        if (!scriptEnabled) {
+            return RequestCallCounter.super.incrementAndExpire(key, expiration, unit);
+        }
+        return redisTemplate.execute(FIXED_WINDOW_SCRIPT, List.of(key), String.valueOf(unit.toMillis(expiration)));
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitAlgorithm algorithm, int limit, long periodMillis) {
+        if (!scriptEnabled && RateLimitAlgorithm.FIXED_WINDOW == algorithm) {
+            return RequestCallCounter.super.tryAcquire(key, algorithm, limit, periodMillis);
+        }
+        return this.evaluate(List.of(new CallLimit(key, algorithm, limit, periodMillis))).isAllowed();
+    }
+
+    @Override
+    public CallLimitStatus tryAcquireWithStatus(CallLimit limit) {
+        if (!scriptEnabled && RateLimitAlgorithm.FIXED_WINDOW == limit.getAlgorithm()) {
+            return RequestCallCounter.super.tryAcquireWithStatus(limit);
+        }
+        return this.evaluate(List.of(limit));
+    }
+
+    @Override
+    public int tryAcquireAll(List<CallLimit> limits) {
+        CallLimitStatus status = this.tryAcquireAllWithStatus(limits);
+        return status.isAllowed() ? -1 : limits.indexOf(status.getCallLimit());
+    }
+
+    /**
+     * all limits are evaluated using a single script call, on redis cluster a script call is made for each run of
+     * consecutive limits that their keys are in same slot.
+     */
+    @Override
+    public CallLimitStatus tryAcquireAllWithStatus(List<CallLimit> limits) {
+        if (!scriptEnabled) {
+            return RequestCallCounter.super.tryAcquireAllWithStatus(limits);
+        }
+        if (limits.size() <= 1 || !this.isCluster()) {
+            return this.evaluate(limits);
+        }
+        CallLimitStatus result = CallLimitStatus.ALLOWED;
+        for (List<CallLimit> group : RateLimitScript.groupBySlot(limits)) {
+            CallLimitStatus status = this.evaluate(group);
+            if (!status.isAllowed()) {
+                return status;
+            }
+            result = result.min(status);
+        }
+        return result;
+    }
+
+    private CallLimitStatus evaluate(List<CallLimit> limits) {
+        if (limits.isEmpty()) {
+            return CallLimitStatus.ALLOWED;
+        }
+        return RateLimitScript.status(redisTemplate.execute(RateLimitScript.SCRIPT, RateLimitScript.keys(limits), RateLimitScript.args(limits).toArray()), limits);
+    }
+
+    private boolean isCluster() {
+        if (null == cluster) {
+            cluster = Boolean.TRUE.equals(redisTemplate.execute((RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection));
+        }
+        return cluster;
+    }
 }
@@ -2,20 +2,23 @@ package org.bardframework.commons.waf;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.bardframework.commons.waf.exception.CallLimitExceedException;
 import org.bardframework.commons.waf.extractor.RequestKeyDetector;
+import org.bardframework.commons.waf.ip.IpPrefixSet;
+import org.bardframework.commons.waf.ip.IpPrefixTrie;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
 
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 @Getter
 @Setter
@@ -23,6 +26,7 @@ import java.util.stream.Collectors;
 public class RequestLimitChecker {
 
     private static final String PREFIX = "CALL_LIMITER_";
+    public static final int DEFAULT_MAX_CACHED_KEYS = 10_000;
 
     private PathPatternRequestMatcher requestMatcher;
     private String path;
@@ -30,7 +34,36 @@ public class RequestLimitChecker {
     private int limit;
     private int period;
     private TimeUnit periodUnit;
+    private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+    /**
+     * if more than one, calls of a key are spread randomly over this number of sub keys, each in its own cluster slot and
+     * allowing its share of limit (rounded up), so a hot key (e.g. a global limit of a path) doesn't load a single redis shard.
+     * limit is approximate, suitable for high volume keys.
+     */
+    private int shards = 1;
     private Set<String> whiteList = new HashSet<>();
+    /**
+     * ip ranges of white list, unique keys that are ip addresses in these ranges are not checked
+     */
+    private IpPrefixSet whiteListRanges;
+    /**
+     * constant part of counter keys of this rule, computed once
+     */
+    @Setter(AccessLevel.NONE)
+    private String keySuffix;
+    /**
+     * call limits of recently seen unique keys (one per shard), so a returning client costs no allocation.
+     * two generations are kept, when current generation is full it replaces previous one, keys found in previous generation
+     * are moved to current one, so recently seen keys stay and keys that are not seen for two generations are dropped,
+     * with no bookkeeping per call and at most {@code 2 * maxCachedKeys} keys.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile ConcurrentHashMap<String, CallLimit[]> callLimits = new ConcurrentHashMap<>();
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile ConcurrentHashMap<String, CallLimit[]> previousCallLimits = new ConcurrentHashMap<>();
+    private int maxCachedKeys = DEFAULT_MAX_CACHED_KEYS;
     @Autowired
     private RequestCallCounter requestCallCounter;
     @Autowired
@@ -55,30 +88,160 @@ public class RequestLimitChecker {
     }
 
     public void checkCallLimit(HttpServletRequest request, HttpServletResponse response) throws CallLimitExceedException {
+        CallLimit callLimit = this.resolveCallLimit(request, response);
+        if (null == callLimit) {
+            return;
+        }
+        if (!this.getRequestCallCounter().tryAcquire(callLimit.getKey(), callLimit.getAlgorithm(), callLimit.getLimit(), callLimit.getPeriodMillis())) {
+            throw new CallLimitExceedException(callLimit.getKey());
+        }
+    }
+
+    /**
+     * @return call limit of this rule for given request, or null if request must not be checked
+     */
+    public CallLimit resolveCallLimit(HttpServletRequest request, HttpServletResponse response) {
         String key = this.getRequestKeyDetector().getUniqueKey(request, response);
         if (null == key) {
-            log.warn("can't detect unique key of request [{} {}] for checking call limit", request.getMethod(), request.getRequestURI());
-            return;
+            if (log.isWarnEnabled()) {
+                log.warn("can't detect unique key of request [{} {}] for checking call limit", request.getMethod(), request.getRequestURI());
+            }
+            return null;
         }
-        if (this.getWhiteList().contains(key)) {
-            log.debug("request [{} {}] with unique key[{}] not checked, unique key is in white list", request.getMethod(), request.getRequestURI(), key);
-            return;
+        return this.toCallLimit(key);
+    }
+
+    /**
+     * @param uniqueKey unique key of request, detected by a servlet or reactive key detector
+     * @return call limit of this rule for given unique key, or null if unique key is in white list
+     */
+    public CallLimit toCallLimit(String uniqueKey) {
+        if (this.getWhiteList().contains(uniqueKey) || (null != this.getWhiteListRanges() && this.getWhiteListRanges().contains(uniqueKey))) {
+            if (log.isDebugEnabled()) {
+                log.debug("unique key[{}] not checked for [{}], unique key is in white list", uniqueKey, this.getPath());
+            }
+            return null;
+        }
+        CallLimit[] limits = callLimits.get(uniqueKey);
+        if (null == limits) {
+            limits = previousCallLimits.get(uniqueKey);
+            if (null == limits) {
+                limits = this.createCallLimits(uniqueKey);
+            }
+            this.cache(uniqueKey, limits);
+        }
+        return limits.length == 1 ? limits[0] : limits[ThreadLocalRandom.current().nextInt(limits.length)];
+    }
+
+    private void cache(String uniqueKey, CallLimit[] limits) {
+        ConcurrentHashMap<String, CallLimit[]> current = callLimits;
+        if (current.size() >= this.getMaxCachedKeys()) {
+            synchronized (this) {
+                if (callLimits == current) {
+                    previousCallLimits = current;
+                    callLimits = new ConcurrentHashMap<>();
+                }
+            }
         }
-        key = PREFIX + key + (null == this.getHttpMethod() ? "" : "@" + this.getHttpMethod()) + "@" + this.getPath();
-        long count = this.getRequestCallCounter().increment(key);
-        if (count > this.getLimit()) {
-            throw new CallLimitExceedException(key);
+        callLimits.put(uniqueKey, limits);
+    }
+
+    /**
+     * unique key is hash tag of key, so on redis cluster all limits of a client are in same slot and checked by one script call.
+     */
+    private CallLimit[] createCallLimits(String uniqueKey) {
+        long periodMillis = this.getPeriodUnit().toMillis(this.getPeriod());
+        String banKey = PREFIX + "{" + uniqueKey + "}" + this.getKeySuffix();
+        if (this.getShards() <= 1) {
+            return new CallLimit[]{new CallLimit(banKey, this.getAlgorithm(), this.getLimit(), periodMillis, this.getKeySuffix())};
         }
-        if (count == 1) {
-            this.getRequestCallCounter().expire(key, this.getPeriod(), this.getPeriodUnit());
+        CallLimit[] limits = new CallLimit[this.getShards()];
+        for (int shard = 0; shard < limits.length; shard++) {
+            String key = PREFIX + "{" + uniqueKey + "#" + shard + "}" + this.getKeySuffix();
+            limits[shard] = new CallLimit(key, banKey, this.getAlgorithm(), (this.getLimit() + limits.length - 1) / limits.length, periodMillis, this.getKeySuffix());
         }
+        return limits;
     }
 
     public boolean match(HttpServletRequest request) {
         return this.getRequestMatcher().matches(request);
     }
 
+    /**
+     * matcher is created lazily when rule is bound from properties using setters
+     */
+    public PathPatternRequestMatcher getRequestMatcher() {
+        if (null == requestMatcher) {
+            requestMatcher = PathPatternRequestMatcher.withDefaults().matcher(this.getHttpMethod(), this.getPath());
+        }
+        return requestMatcher;
+    }
+
+    public String getKeySuffix() {
+        if (null == keySuffix) {
+            keySuffix = (null == this.getHttpMethod() ? "" : "@" + this.getHttpMethod()) + "@" + this.getPath();
+        }
+        return keySuffix;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+        this.requestMatcher = null;
+        this.keySuffix = null;
+        this.clearCallLimits();
+    }
+
+    public void setHttpMethod(HttpMethod httpMethod) {
+        this.httpMethod = httpMethod;
+        this.requestMatcher = null;
+        this.keySuffix = null;
+        this.clearCallLimits();
+    }
+
+    public void setLimit(int limit) {
+        this.limit = limit;
+        this.clearCallLimits();
+    }
+
+    public void setPeriod(int period) {
+        this.period = period;
+        this.clearCallLimits();
+    }
+
+    public void setPeriodUnit(TimeUnit periodUnit) {
+        this.periodUnit = periodUnit;
+        this.clearCallLimits();
+    }
+
+    public void setAlgorithm(RateLimitAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.clearCallLimits();
+    }
+
+    public void setShards(int shards) {
+        this.shards = shards;
+        this.clearCallLimits();
+    }
+
+    private synchronized void clearCallLimits() {
+        this.callLimits = new ConcurrentHashMap<>();
+        this.previousCallLimits = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param whiteList exact unique keys, or CIDR blocks (e.g. 10.0.0.0/8) for ip unique keys
+     */
     public void setWhiteList(String... whiteList) {
-        this.whiteList = Arrays.stream(whiteList).collect(Collectors.toSet());
+        Set<String> keys = new HashSet<>();
+        IpPrefixTrie ranges = new IpPrefixTrie();
+        for (String item : whiteList) {
+            if (item.indexOf('/') > 0) {
+                ranges.add(item);
+            } else {
+                keys.add(item);
+            }
+        }
+        this.whiteList = keys;
+        this.whiteListRanges = ranges.size() == 0 ? null : ranges;
     }
 }
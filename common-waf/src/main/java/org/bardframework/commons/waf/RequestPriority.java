@@ -0,0 +1,21 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+
+/**
+ * priority class of requests for load shedding, requests of each class may use a share of adaptive limit,
+ * so when in flight requests grow, lower priority requests are shed first.
+ */
+@Getter
+public enum RequestPriority {
+    CRITICAL(1.0),
+    HIGH(0.9),
+    NORMAL(0.75),
+    LOW(0.5);
+
+    private final double share;
+
+    RequestPriority(double share) {
+        this.share = share;
+    }
+}
@@ -0,0 +1,50 @@
+package org.bardframework.commons.waf;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+
+/**
+ * assigns a priority class to requests of a path, used by {@link AdaptiveLoadShedder}
+ */
+@Getter
+@Setter
+public class RequestPriorityRule {
+
+    private PathPatternRequestMatcher requestMatcher;
+    private String path;
+    private HttpMethod httpMethod;
+    private RequestPriority priority = RequestPriority.NORMAL;
+
+    public RequestPriorityRule() {
+    }
+
+    public RequestPriorityRule(HttpMethod httpMethod, String path, RequestPriority priority) {
+        this.httpMethod = httpMethod;
+        this.path = path;
+        this.priority = priority;
+    }
+
+    public boolean match(HttpServletRequest request) {
+        return this.getRequestMatcher().matches(request);
+    }
+
+    public PathPatternRequestMatcher getRequestMatcher() {
+        if (null == requestMatcher) {
+            requestMatcher = PathPatternRequestMatcher.withDefaults().matcher(this.getHttpMethod(), this.getPath());
+        }
+        return requestMatcher;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+        this.requestMatcher = null;
+    }
+
+    public void setHttpMethod(HttpMethod httpMethod) {
+        this.httpMethod = httpMethod;
+        this.requestMatcher = null;
+    }
+}
@@ -0,0 +1,206 @@
+package org.bardframework.commons.waf;
+
+import org.springframework.http.HttpMethod;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Immutable index of rules, compiled once from rules path patterns. Each rule is placed in a path segment trie,
+ * under node of its literal prefix (segments before first wildcard or variable) and its http method,
+ * so for a request only rules that their literal prefix matches request path are returned as candidates.
+ * Candidates still must be checked with exact rule matcher.
+ * Each node keeps rules of its path from root as an immutable list, and path is walked in place without substrings,
+ * so a lookup allocates nothing; candidates of any method and of request method are merged once per pair of nodes and cached.
+ */
+public class RequestRuleIndex<T> {
+
+    private final List<T> rules;
+    private final Node anyMethodRoot = new Node();
+    private final Map<String, Node> methodRoots = new HashMap<>();
+
+    /**
+     * @param methodGetter returns http method of rule, null means any method
+     * @param pathGetter   returns path pattern of rule
+     */
+    public RequestRuleIndex(List<T> rules, Function<T, HttpMethod> methodGetter, Function<T, String> pathGetter) {
+        this.rules = List.copyOf(rules);
+        for (int i = 0; i < this.rules.size(); i++) {
+            T rule = this.rules.get(i);
+            HttpMethod method = methodGetter.apply(rule);
+            Node node = null == method ? anyMethodRoot : methodRoots.computeIfAbsent(method.name(), name -> new Node());
+            for (String segment : literalPrefix(pathGetter.apply(rule))) {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            node.add(i);
+        }
+        anyMethodRoot.compile(new int[0]);
+        methodRoots.values().forEach(root -> root.compile(new int[0]));
+    }
+
+    /**
+     * @param path request path within application
+     * @return rules that may match request, in the order they were given, list must not be modified
+     */
+    public List<T> candidates(String method, String path) {
+        if (rules.isEmpty()) {
+            return List.of();
+        }
+        if (null == path || path.indexOf('%') >= 0 || path.indexOf(';') >= 0) {
+            /*
+                encoded or parameterized paths are matched by rule matchers after decoding, so all rules are candidates
+             */
+            return rules;
+        }
+        Node any = anyMethodRoot.deepest(path);
+        Node methodRoot = null == method ? null : methodRoots.get(method);
+        Node byMethod = null == methodRoot ? null : methodRoot.deepest(path);
+        if (null == byMethod || byMethod.pathRuleIds.length == 0) {
+            return any.pathRules;
+        }
+        if (any.pathRuleIds.length == 0) {
+            return byMethod.pathRules;
+        }
+        List<T> merged = any.merged.get(byMethod);
+        if (null == merged) {
+            merged = this.toRules(merge(any.pathRuleIds, byMethod.pathRuleIds));
+            any.merged.putIfAbsent(byMethod, merged);
+        }
+        return merged;
+    }
+
+    public List<T> getRules() {
+        return rules;
+    }
+
+    private List<T> toRules(int[] ids) {
+        List<T> list = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            list.add(rules.get(id));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    private static int[] merge(int[] first, int[] second) {
+        int[] ids = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, ids, first.length, second.length);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * @return segments of pattern before first segment that has wildcard or variable
+     */
+    static List<String> literalPrefix(String pattern) {
+        List<String> segments = new ArrayList<>();
+        if (null == pattern) {
+            return segments;
+        }
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0) {
+                break;
+            }
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    /**
+     * hash of a range of chars, same as {@link String#hashCode()} of its substring
+     */
+    private static int hash(String value, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    private class Node {
+        /**
+         * used while index is built, then compiled to open addressing table of segments
+         */
+        private Map<String, Node> children = new HashMap<>();
+        private String[] segments;
+        private Node[] nodes;
+        private int[] ruleIds = new int[0];
+        /**
+         * sorted ids and rules of all nodes from root to this node
+         */
+        private int[] pathRuleIds;
+        private List<T> pathRules;
+        /**
+         * merged rules of this node (any method) and a node of a method tree
+         */
+        private final Map<Node, List<T>> merged = new ConcurrentHashMap<>();
+
+        void add(int ruleId) {
+            ruleIds = Arrays.copyOf(ruleIds, ruleIds.length + 1);
+            ruleIds[ruleIds.length - 1] = ruleId;
+        }
+
+        void compile(int[] parentRuleIds) {
+            pathRuleIds = ruleIds.length == 0 ? parentRuleIds : merge(parentRuleIds, ruleIds);
+            pathRules = toRules(pathRuleIds);
+            int size = Integer.highestOneBit(Math.max(children.size(), 1) * 2) * 2;
+            segments = new String[size];
+            nodes = new RequestRuleIndex.Node[size];
+            children.forEach((segment, child) -> {
+                int index = segment.hashCode() & (size - 1);
+                while (null != segments[index]) {
+                    index = (index + 1) & (size - 1);
+                }
+                segments[index] = segment;
+                nodes[index] = child;
+                child.compile(pathRuleIds);
+            });
+            children = null;
+        }
+
+        Node child(String path, int start, int end) {
+            int length = end - start;
+            int hash = hash(path, start, end);
+            int mask = segments.length - 1;
+            for (int index = hash & mask; null != segments[index]; index = (index + 1) & mask) {
+                String segment = segments[index];
+                if (segment.length() == length && segment.hashCode() == hash && path.regionMatches(start, segment, 0, length)) {
+                    return nodes[index];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return deepest node of this tree that its segments are a prefix of path segments
+         */
+        Node deepest(String path) {
+            Node node = this;
+            int start = 0;
+            int length = path.length();
+            while (start <= length) {
+                int end = path.indexOf('/', start);
+                if (end < 0) {
+                    end = length;
+                }
+                if (end > start) {
+                    Node child = node.child(path, start, end);
+                    if (null == child) {
+                        return node;
+                    }
+                    node = child;
+                }
+                start = end + 1;
+            }
+            return node;
+        }
+    }
+}
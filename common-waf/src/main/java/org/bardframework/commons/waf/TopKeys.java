@@ -0,0 +1,108 @@
+package org.bardframework.commons.waf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Approximate most frequent keys using Space-Saving algorithm: at most {@code capacity} keys are tracked, a new key
+ * replaces the least frequent one and inherits its count, so memory is bounded whatever number of distinct keys is.
+ * Count of a key is over estimated at most by count of replaced key, keys more frequent than total / capacity are always kept.
+ * Keys are split by hash to independent stripes, each with its own lock and a part of capacity, so eviction scans only a stripe.
+ * Adding never blocks, if stripe of key is busy the sample is dropped, so during a flood request threads don't serialize here.
+ */
+public class TopKeys {
+
+    private static final int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    public TopKeys(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        int count = Math.min(MAX_STRIPES, capacity);
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+    }
+
+    public void add(String key) {
+        int hash = key.hashCode();
+        Stripe stripe = stripes[Math.floorMod(hash ^ (hash >>> 16), stripes.length)];
+        if (stripe.lock.tryLock()) {
+            try {
+                stripe.add(key);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return at most n keys with their estimated count, most frequent first
+     */
+    public List<Map.Entry<String, Long>> top(int n) {
+        List<Map.Entry<String, Long>> top = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.counts.forEach((key, count) -> top.add(Map.entry(key, count[0])));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        top.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return top.size() > n ? new ArrayList<>(top.subList(0, n)) : top;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.counts.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        /**
+         * key to {count, error}
+         */
+        private final Map<String, long[]> counts;
+
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.counts = new HashMap<>(capacity * 2);
+        }
+
+        void add(String key) {
+            long[] count = counts.get(key);
+            if (null != count) {
+                count[0]++;
+                return;
+            }
+            if (counts.size() < capacity) {
+                counts.put(key, new long[]{1, 0});
+                return;
+            }
+            String minKey = null;
+            long min = Long.MAX_VALUE;
+            for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+                if (entry.getValue()[0] < min) {
+                    min = entry.getValue()[0];
+                    minKey = entry.getKey();
+                }
+            }
+            counts.remove(minKey);
+            counts.put(key, new long[]{min + 1, min});
+        }
+    }
+}
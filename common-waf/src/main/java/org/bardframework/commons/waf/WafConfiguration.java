@@ -1,12 +1,21 @@
 package org.bardframework.commons.waf;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import org.bardframework.commons.waf.extractor.RequestKeyDetector;
+import org.bardframework.commons.waf.ip.IpPrefixSet;
+import org.bardframework.commons.waf.ip.IpPrefixTrie;
+import org.bardframework.commons.waf.ip.ReloadableIpPrefixSet;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.nio.file.Path;
 import java.util.List;
 
 @Getter
@@ -15,18 +24,148 @@ import java.util.List;
 public class WafConfiguration {
 
     private List<RequestLimitChecker> rules;
+    /**
+     * rules that limit in flight requests
+     */
+    private List<ConcurrencyLimitChecker> concurrencyRules = List.of();
+    /**
+     * CIDR blocks or ip addresses that are rejected
+     */
+    private List<String> blockList;
+    /**
+     * file of blocked CIDR blocks, one per line, reloaded on change
+     */
+    private String blockListFile;
+    private long blockListReloadIntervalMillis = 10_000;
+    /**
+     * properties or yaml file of rules (e.g. waf.rules[0].path), if set, rules are reloaded from it on change
+     */
+    private String rulesFile;
+    private long rulesReloadIntervalMillis = 10_000;
+    /**
+     * redis hash of rules (e.g. field waf.rules[0].path), if set, rules are reloaded from it, so all nodes share rules.
+     * must not be set together with {@code rulesFile}
+     */
+    private String rulesRedisKey;
+    /**
+     * if true, an empty rules file removes all rules, otherwise current rules are kept
+     */
+    private boolean rulesAllowEmpty;
+    /**
+     * adaptive load shedding and priority of paths, disabled if not set
+     */
+    private AdaptiveLoadShedder loadShedding;
+    /**
+     * if set, call counter is wrapped in a circuit breaker and this policy is applied while it is unhealthy,
+     * same policy is applied to errors of concurrency limiter
+     */
+    private RequestCallCounterFailover.FailurePolicy counterFailurePolicy;
+    /**
+     * max wait of each counter call, each call is handed to a virtual thread. zero runs calls on caller thread and relies on timeout of redis client
+     */
+    private long counterTimeoutMillis = RequestCallCounterFailover.DEFAULT_TIMEOUT_MILLIS;
+    private int counterFailureThreshold = RequestCallCounterFailover.DEFAULT_FAILURE_THRESHOLD;
+    private long counterOpenMillis = RequestCallCounterFailover.DEFAULT_OPEN_MILLIS;
 
     @Autowired
     private RequestCallCounter requestCallCounter;
     @Autowired
     private RequestKeyDetector requestKeyDetector;
+    @Autowired(required = false)
+    private PenaltyBox penaltyBox;
+    @Autowired(required = false)
+    private ConcurrencyLimiter concurrencyLimiter;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private RequestCallCounter effectiveCallCounter;
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private WafMetrics metrics;
+
+    /**
+     * reloaded from file until context is closed
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "waf", name = "block-list-file")
+    ReloadableIpPrefixSet wafBlockListFile() {
+        return new ReloadableIpPrefixSet(Path.of(blockListFile), blockListReloadIntervalMillis);
+    }
 
     @Bean
-    WafFilter wafFilter() {
+    WafFilter wafFilter(ObjectProvider<ReloadableIpPrefixSet> blockListFile) {
+        RequestCallCounter counter = this.callCounter();
         rules.forEach(rule -> {
-            rule.setRequestCallCounter(requestCallCounter);
+            rule.setRequestCallCounter(counter);
+            rule.setRequestKeyDetector(requestKeyDetector);
+        });
+        ConcurrencyLimiter limiter = this.concurrencyLimiter();
+        concurrencyRules.forEach(rule -> {
+            rule.setConcurrencyLimiter(limiter);
             rule.setRequestKeyDetector(requestKeyDetector);
         });
-        return new WafFilter(rules);
+        WafFilter filter = new WafFilter(rules, this.blockList(blockListFile.getIfAvailable()), null, penaltyBox, concurrencyRules, loadShedding);
+        filter.setMetrics(this.metrics());
+        return filter;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "waf", name = "rules-file")
+    WafRuleReloader wafRuleReloader(WafFilter wafFilter) {
+        return new WafRuleReloader(wafFilter, new WafRuleFileSource(Path.of(rulesFile)), this.callCounter(), requestKeyDetector, rulesReloadIntervalMillis, rulesAllowEmpty);
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "waf", name = "rules-redis-key")
+    WafRuleReloader wafRedisRuleReloader(WafFilter wafFilter, StringRedisTemplate redisTemplate) {
+        if (null != rulesFile) {
+            throw new IllegalStateException("waf.rules-file and waf.rules-redis-key must not be both set");
+        }
+        return new WafRuleReloader(wafFilter, new WafRuleRedisSource(redisTemplate, rulesRedisKey), this.callCounter(), requestKeyDetector, rulesReloadIntervalMillis, rulesAllowEmpty);
+    }
+
+    private synchronized RequestCallCounter callCounter() {
+        if (null == effectiveCallCounter) {
+            effectiveCallCounter = null == counterFailurePolicy ? requestCallCounter : new RequestCallCounterFailover(requestCallCounter, counterFailurePolicy,
+                    RequestCallCounterFailover.FailurePolicy.FALLBACK == counterFailurePolicy ? new RequestCallCounterInMemory() : null,
+                    counterTimeoutMillis, counterFailureThreshold, counterOpenMillis);
+            if (effectiveCallCounter instanceof RequestCallCounterFailover failover) {
+                failover.setMetrics(this.metrics());
+            }
+        }
+        return effectiveCallCounter;
+    }
+
+    private ConcurrencyLimiter concurrencyLimiter() {
+        if (null == concurrencyLimiter) {
+            return new ConcurrencyLimiterInMemory();
+        }
+        if (null == counterFailurePolicy) {
+            return concurrencyLimiter;
+        }
+        ConcurrencyLimiterFailover failover = new ConcurrencyLimiterFailover(concurrencyLimiter, counterFailurePolicy,
+                RequestCallCounterFailover.FailurePolicy.FALLBACK == counterFailurePolicy ? new ConcurrencyLimiterInMemory() : null);
+        failover.setMetrics(this.metrics());
+        return failover;
+    }
+
+    /**
+     * shared by filter and counter failover, null if there is no meter registry
+     */
+    private synchronized WafMetrics metrics() {
+        if (null == metrics && null != meterRegistry) {
+            metrics = new WafMetrics(meterRegistry);
+        }
+        return metrics;
+    }
+
+    private IpPrefixSet blockList(IpPrefixSet file) {
+        IpPrefixSet blocked = null == blockList || blockList.isEmpty() ? null : IpPrefixTrie.of(blockList);
+        if (null != file) {
+            blocked = null == blocked ? file : blocked.or(file);
+        }
+        return blocked;
     }
 }
@@ -5,32 +5,280 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.bardframework.commons.waf.exception.CallLimitExceedException;
+import org.bardframework.commons.waf.exception.ConcurrencyLimitExceedException;
+import org.bardframework.commons.waf.extractor.IpDetector;
+import org.bardframework.commons.waf.ip.IpPrefixSet;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 @Slf4j
 public class WafFilter implements Filter {
 
-    private final List<RequestLimitChecker> checkers;
+    /**
+     * immutable index, replaced as a whole when rules are reloaded, so requests never lock
+     */
+    private volatile RequestRuleIndex<RequestLimitChecker> checkers;
+    /**
+     * requests from these ip ranges are rejected before any call limit check, null means no block list
+     */
+    private final IpPrefixSet blockList;
+    private final IpDetector ipDetector;
+    /**
+     * keys that exceed their limits repeatedly are banned and rejected without calling counters, null means no ban
+     */
+    private final PenaltyBox penaltyBox;
+    private final RequestRuleIndex<ConcurrencyLimitChecker> concurrencyCheckers;
+    /**
+     * sheds requests when service is overloaded, before any other check, null means no load shedding
+     */
+    private final AdaptiveLoadShedder loadShedder;
+    /**
+     * rejections are logged at most 10 times per second, so logging doesn't amplify a flood
+     */
+    private final LogRateLimiter rejectionLog = new LogRateLimiter(10);
+    /**
+     * null means no metrics
+     */
+    private WafMetrics metrics;
 
     public WafFilter(List<RequestLimitChecker> checkers) {
-        this.checkers = checkers;
+        this(checkers, null, null);
+    }
+
+    public WafFilter(List<RequestLimitChecker> checkers, IpPrefixSet blockList, IpDetector ipDetector) {
+        this(checkers, blockList, ipDetector, null);
+    }
+
+    public WafFilter(List<RequestLimitChecker> checkers, IpPrefixSet blockList, IpDetector ipDetector, PenaltyBox penaltyBox) {
+        this(checkers, blockList, ipDetector, penaltyBox, List.of());
+    }
+
+    public WafFilter(List<RequestLimitChecker> checkers, IpPrefixSet blockList, IpDetector ipDetector, PenaltyBox penaltyBox, List<ConcurrencyLimitChecker> concurrencyCheckers) {
+        this(checkers, blockList, ipDetector, penaltyBox, concurrencyCheckers, null);
+    }
+
+    public WafFilter(List<RequestLimitChecker> checkers, IpPrefixSet blockList, IpDetector ipDetector, PenaltyBox penaltyBox, List<ConcurrencyLimitChecker> concurrencyCheckers, AdaptiveLoadShedder loadShedder) {
+        this.checkers = new RequestRuleIndex<>(checkers, RequestLimitChecker::getHttpMethod, RequestLimitChecker::getPath);
+        this.blockList = blockList;
+        this.ipDetector = null == ipDetector ? new IpDetector() : ipDetector;
+        this.penaltyBox = penaltyBox;
+        this.concurrencyCheckers = new RequestRuleIndex<>(null == concurrencyCheckers ? List.of() : concurrencyCheckers, ConcurrencyLimitChecker::getHttpMethod, ConcurrencyLimitChecker::getPath);
+        this.loadShedder = loadShedder;
+    }
+
+    /**
+     * publishes new rules atomically, requests in progress complete with previous rules
+     */
+    public void setCheckers(List<RequestLimitChecker> checkers) {
+        this.checkers = new RequestRuleIndex<>(checkers, RequestLimitChecker::getHttpMethod, RequestLimitChecker::getPath);
+    }
+
+    public List<RequestLimitChecker> getCheckers() {
+        return checkers.getRules();
+    }
+
+    public void setMetrics(WafMetrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-        try {
-            for (RequestLimitChecker checker : checkers) {
-                if (checker.match((HttpServletRequest) request)) {
-                    checker.checkCallLimit((HttpServletRequest) request, (HttpServletResponse) response);
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        if (null != blockList) {
+            String ip = ipDetector.detect(httpRequest);
+            if (blockList.contains(ip)) {
+                if (rejectionLog.tryAcquire()) {
+                    log.warn("request from blocked ip [{}] rejected, [{}] similar logs suppressed", ip, rejectionLog.drainSuppressed());
                 }
+                if (null != metrics) {
+                    metrics.rejected("block-list", ip);
+                }
+                ((HttpServletResponse) response).setStatus(HttpStatus.FORBIDDEN.value());
+                return;
             }
-            chain.doFilter(request, response);
+        }
+        if (null == loadShedder) {
+            this.doFilter(httpRequest, (HttpServletResponse) response, chain);
+            return;
+        }
+        /*
+            latency of whole processing is sampled by load shedder when permit is closed
+         */
+        ConcurrencyLimiter.Permit loadPermit = loadShedder.tryAcquire(httpRequest, getPathWithinApplication(httpRequest));
+        if (null == loadPermit) {
+            if (null != metrics) {
+                metrics.rejected("load-shedding", null);
+            }
+            log.debug("request [{} {}] shed, service is overloaded", httpRequest.getMethod(), httpRequest.getRequestURI());
+            ((HttpServletResponse) response).setHeader(HttpHeaders.RETRY_AFTER, "1");
+            ((HttpServletResponse) response).setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            this.doFilter(httpRequest, (HttpServletResponse) response, chain);
+        } finally {
+            loadPermit.close();
+        }
+    }
+
+    private void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
+        List<ConcurrencyLimiter.Permit> permits;
+        try {
+            this.checkCallLimits(request, response);
+            permits = this.acquirePermits(request, response);
         } catch (CallLimitExceedException e) {
-            log.warn("call limit exceed for [{}]", e.getKey());
-            ((HttpServletResponse) response).setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            if (rejectionLog.tryAcquire()) {
+                log.warn("call limit exceed for [{}], [{}] similar logs suppressed", e.getKey(), rejectionLog.drainSuppressed());
+            }
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return;
+        } catch (ConcurrencyLimitExceedException e) {
+            if (rejectionLog.tryAcquire()) {
+                log.warn("concurrency limit exceed for [{}], [{}] similar logs suppressed", e.getKey(), rejectionLog.drainSuppressed());
+            }
+            if (null != metrics) {
+                metrics.rejected("concurrency", e.getKey());
+            }
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            /*
+                for async requests permits are released when processing thread returns, not when response is completed
+             */
+            release(permits);
+        }
+    }
+
+    /**
+     * @return permits of all matched concurrency rules, if a permit is not acquired, already acquired permits are released
+     */
+    private List<ConcurrencyLimiter.Permit> acquirePermits(HttpServletRequest request, HttpServletResponse response) throws ConcurrencyLimitExceedException {
+        List<ConcurrencyLimitChecker> candidates = concurrencyCheckers.candidates(request.getMethod(), getPathWithinApplication(request));
+        if (candidates.isEmpty()) {
+            return List.of();
+        }
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>(candidates.size());
+        try {
+            for (ConcurrencyLimitChecker checker : candidates) {
+                if (checker.match(request)) {
+                    ConcurrencyLimiter.Permit permit = checker.tryAcquire(request, response);
+                    if (null != permit) {
+                        permits.add(permit);
+                    }
+                }
+            }
+        } catch (ConcurrencyLimitExceedException | RuntimeException e) {
+            release(permits);
+            throw e;
+        }
+        return permits;
+    }
+
+    private static void release(List<ConcurrencyLimiter.Permit> permits) {
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            try {
+                permit.close();
+            } catch (Exception e) {
+                log.error("error releasing concurrency permit", e);
+            }
+        }
+    }
+
+    /**
+     * limits of all matched rules are collected first, then evaluated in one batch for each counter,
+     * so a request that matches several rules costs a single round trip.
+     * quota of most restrictive limit is written to RateLimit-* response headers.
+     */
+    private void checkCallLimits(HttpServletRequest request, HttpServletResponse response) throws CallLimitExceedException {
+        RequestCallCounter counter = null;
+        List<CallLimit> limits = null;
+        CallLimitStatus status = null;
+        for (RequestLimitChecker checker : checkers.candidates(request.getMethod(), getPathWithinApplication(request))) {
+            if (!checker.match(request)) {
+                continue;
+            }
+            CallLimit limit = checker.resolveCallLimit(request, response);
+            if (null == limit) {
+                continue;
+            }
+            if (null != penaltyBox) {
+                long banRemainingMillis = penaltyBox.getBanRemainingMillis(limit.getBanKey());
+                if (banRemainingMillis > 0) {
+                    if (null != metrics) {
+                        metrics.rejected(limit.getRule(), limit.getKey());
+                    }
+                    response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(CallLimitStatus.toSeconds(banRemainingMillis)));
+                    throw new CallLimitExceedException(limit.getKey());
+                }
+            }
+            if (null == limits) {
+                limits = new ArrayList<>();
+            } else if (counter != checker.getRequestCallCounter()) {
+                status = this.tryAcquireAll(counter, limits, status, response);
+                limits.clear();
+            }
+            counter = checker.getRequestCallCounter();
+            limits.add(limit);
+        }
+        if (null != limits) {
+            status = this.tryAcquireAll(counter, limits, status, response);
+            status.writeHeaders(response::setHeader);
+        }
+    }
+
+    /**
+     * @param previous status of limits evaluated before by other counters, or null
+     * @return more restrictive of previous status and status of given limits
+     */
+    private CallLimitStatus tryAcquireAll(RequestCallCounter counter, List<CallLimit> limits, CallLimitStatus previous, HttpServletResponse response) throws CallLimitExceedException {
+        CallLimitStatus status = this.tryAcquireAll(counter, limits);
+        if (!status.isAllowed()) {
+            String key = status.getCallLimit().getKey();
+            if (null != metrics) {
+                metrics.rejected(status.getCallLimit().getRule(), key);
+            }
+            if (null != penaltyBox) {
+                penaltyBox.recordViolation(status.getCallLimit().getBanKey());
+            }
+            status.writeHeaders(response::setHeader);
+            throw new CallLimitExceedException(key);
+        }
+        if (null != metrics) {
+            for (CallLimit limit : limits) {
+                metrics.allowed(limit.getRule());
+            }
+        }
+        return null == previous ? status : previous.min(status);
+    }
+
+    private CallLimitStatus tryAcquireAll(RequestCallCounter counter, List<CallLimit> limits) {
+        if (null == metrics) {
+            return counter.tryAcquireAllWithStatus(limits);
+        }
+        long start = System.nanoTime();
+        try {
+            return counter.tryAcquireAllWithStatus(limits);
+        } catch (RuntimeException e) {
+            metrics.error(counter);
+            throw e;
+        } finally {
+            metrics.recordLatency(counter, System.nanoTime() - start);
+        }
+    }
+
+    private static String getPathWithinApplication(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if (null == uri || null == contextPath || contextPath.isEmpty() || !uri.startsWith(contextPath)) {
+            return uri;
         }
+        return uri.substring(contextPath.length());
     }
 }
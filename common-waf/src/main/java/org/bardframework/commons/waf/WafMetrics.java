@@ -0,0 +1,73 @@
+package org.bardframework.commons.waf;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of waf: requests of each rule by outcome, latency and errors of each counter backend,
+ * and approximate top rejected keys. Meters are cached, so recording doesn't look up registry on each request.
+ */
+@Getter
+public class WafMetrics {
+
+    public static final String REQUESTS = "waf.requests";
+    public static final String COUNTER_LATENCY = "waf.counter.latency";
+    public static final String COUNTER_ERRORS = "waf.counter.errors";
+    public static final int DEFAULT_TOP_KEYS_CAPACITY = 100;
+
+    private final MeterRegistry registry;
+    private final Map<String, Counter> allowed = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Timer> latencies = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+    private final TopKeys topRejectedKeys;
+
+    public WafMetrics(MeterRegistry registry) {
+        this(registry, DEFAULT_TOP_KEYS_CAPACITY);
+    }
+
+    public WafMetrics(MeterRegistry registry, int topKeysCapacity) {
+        this.registry = registry;
+        this.topRejectedKeys = new TopKeys(topKeysCapacity);
+    }
+
+    public void allowed(String rule) {
+        this.getAllowed().computeIfAbsent(ruleName(rule), name -> Counter.builder(REQUESTS).tag("rule", name).tag("outcome", "allowed").register(this.getRegistry())).increment();
+    }
+
+    /**
+     * @param key rejected key, counted in top rejected keys, or null
+     */
+    public void rejected(String rule, String key) {
+        this.getRejected().computeIfAbsent(ruleName(rule), name -> Counter.builder(REQUESTS).tag("rule", name).tag("outcome", "rejected").register(this.getRegistry())).increment();
+        if (null != key) {
+            this.getTopRejectedKeys().add(key);
+        }
+    }
+
+    public void recordLatency(Object counter, long nanos) {
+        this.getLatencies().computeIfAbsent(counter.getClass(), type -> Timer.builder(COUNTER_LATENCY).tag("counter", type.getName()).publishPercentileHistogram().register(this.getRegistry())).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void error(Object counter) {
+        this.getErrors().computeIfAbsent(counter.getClass(), type -> Counter.builder(COUNTER_ERRORS).tag("counter", type.getName()).register(this.getRegistry())).increment();
+    }
+
+    /**
+     * @return most rejected keys with their approximate rejection count
+     */
+    public List<Map.Entry<String, Long>> topRejectedKeys(int n) {
+        return this.getTopRejectedKeys().top(n);
+    }
+
+    private static String ruleName(String rule) {
+        return null == rule ? "unknown" : rule;
+    }
+}
@@ -0,0 +1,50 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.EnumerablePropertySource;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * rules of a properties or yaml file (yaml needs snakeyaml), file is read again only if it is modified.
+ */
+@Getter
+public class WafRuleFileSource implements WafRuleSource {
+
+    private final Path file;
+    private long lastModified = Long.MIN_VALUE;
+    private Map<String, String> properties = Map.of();
+
+    public WafRuleFileSource(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized Map<String, String> load() throws Exception {
+        long modified = Files.getLastModifiedTime(this.getFile()).toMillis();
+        if (modified == this.getLastModified()) {
+            return this.getProperties();
+        }
+        String name = this.getFile().getFileName().toString();
+        PropertySourceLoader loader = name.endsWith(".yml") || name.endsWith(".yaml") ? new YamlPropertySourceLoader() : new PropertiesPropertySourceLoader();
+        Map<String, String> loaded = new HashMap<>();
+        for (PropertySource<?> source : loader.load(name, new FileSystemResource(this.getFile()))) {
+            if (source instanceof EnumerablePropertySource<?> enumerable) {
+                for (String property : enumerable.getPropertyNames()) {
+                    loaded.putIfAbsent(property, String.valueOf(enumerable.getProperty(property)));
+                }
+            }
+        }
+        this.properties = loaded;
+        this.lastModified = modified;
+        return loaded;
+    }
+}
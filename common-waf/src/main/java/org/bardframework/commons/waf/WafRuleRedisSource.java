@@ -0,0 +1,29 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * rules kept in a redis hash, each field is a property name (e.g. waf.rules[0].limit) and its value, so all nodes share rules.
+ */
+@Getter
+public class WafRuleRedisSource implements WafRuleSource {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final String key;
+
+    public WafRuleRedisSource(RedisTemplate<String, String> redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+
+    @Override
+    public Map<String, String> load() {
+        Map<String, String> properties = new HashMap<>();
+        this.getRedisTemplate().<String, String>opsForHash().entries(this.getKey()).forEach(properties::put);
+        return properties;
+    }
+}
@@ -0,0 +1,95 @@
+package org.bardframework.commons.waf;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bardframework.commons.waf.extractor.RequestKeyDetector;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a rule source and when its rules are changed, binds them to new rules and publishes them to filter.
+ * New rules use same counter and key detector, and keys of a rule only depend on its method and path,
+ * so counters of unchanged rules are preserved. If rules can't be bound, current rules are kept.
+ * An empty source (e.g. missing redis hash or a file truncated while writing) is an error too, unless {@code allowEmpty} is set,
+ * so a broken source never removes all rules silently.
+ */
+@Slf4j
+@Getter
+public class WafRuleReloader implements AutoCloseable {
+
+    public static final String RULES_PROPERTY = "waf.rules";
+
+    private final WafFilter wafFilter;
+    private final WafRuleSource source;
+    private final RequestCallCounter requestCallCounter;
+    private final RequestKeyDetector requestKeyDetector;
+    private final boolean allowEmpty;
+    private final ScheduledExecutorService reloader;
+    private volatile Map<String, String> properties;
+
+    public WafRuleReloader(WafFilter wafFilter, WafRuleSource source, RequestCallCounter requestCallCounter, RequestKeyDetector requestKeyDetector, long reloadIntervalMillis) {
+        this(wafFilter, source, requestCallCounter, requestKeyDetector, reloadIntervalMillis, false);
+    }
+
+    /**
+     * @param allowEmpty if true, an empty source removes all rules, otherwise it is logged and current rules are kept
+     */
+    public WafRuleReloader(WafFilter wafFilter, WafRuleSource source, RequestCallCounter requestCallCounter, RequestKeyDetector requestKeyDetector, long reloadIntervalMillis, boolean allowEmpty) {
+        this.wafFilter = wafFilter;
+        this.allowEmpty = allowEmpty;
+        this.source = source;
+        this.requestCallCounter = requestCallCounter;
+        this.requestKeyDetector = requestKeyDetector;
+        this.reload();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waf-rule-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reloader.scheduleWithFixedDelay(this::reload, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if rules are changed and published
+     */
+    public synchronized boolean reload() {
+        try {
+            Map<String, String> loaded = this.getSource().load();
+            if (null == loaded || loaded.equals(this.getProperties())) {
+                return false;
+            }
+            List<RequestLimitChecker> rules = bind(loaded);
+            if (rules.isEmpty() && !this.isAllowEmpty()) {
+                log.error("no waf rule loaded from [{}], current rules are kept", this.getSource());
+                return false;
+            }
+            rules.forEach(rule -> {
+                rule.setRequestCallCounter(this.getRequestCallCounter());
+                rule.setRequestKeyDetector(this.getRequestKeyDetector());
+            });
+            this.getWafFilter().setCheckers(rules);
+            this.properties = loaded;
+            log.info("[{}] waf rules reloaded", rules.size());
+            return true;
+        } catch (Exception e) {
+            log.error("error reloading waf rules, current rules are kept", e);
+            return false;
+        }
+    }
+
+    public static List<RequestLimitChecker> bind(Map<String, String> properties) {
+        return new Binder(new MapConfigurationPropertySource(properties)).bind(RULES_PROPERTY, Bindable.listOf(RequestLimitChecker.class)).orElse(List.of());
+    }
+
+    @Override
+    public void close() {
+        this.getReloader().shutdownNow();
+    }
+}
@@ -0,0 +1,13 @@
+package org.bardframework.commons.waf;
+
+import java.util.Map;
+
+/**
+ * source of rules that may change at runtime, rules are given as flat properties with same names of application properties,
+ * e.g. {@code waf.rules[0].path=/api/**}, so rules of application properties can be moved to a source as is.
+ */
+@FunctionalInterface
+public interface WafRuleSource {
+
+    Map<String, String> load() throws Exception;
+}
@@ -7,7 +7,11 @@ public class CallLimitExceedException extends Exception {
 
     private final String key;
 
+    /**
+     * stack trace is not filled, exception is thrown for every rejected request and only used for flow control
+     */
     public CallLimitExceedException(String url) {
+        super(null, null, false, false);
         this.key = url;
     }
 
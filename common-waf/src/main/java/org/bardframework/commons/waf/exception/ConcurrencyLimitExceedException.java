@@ -0,0 +1,17 @@
+package org.bardframework.commons.waf.exception;
+
+import lombok.Getter;
+
+@Getter
+public class ConcurrencyLimitExceedException extends Exception {
+
+    private final String key;
+
+    /**
+     * stack trace is not filled, exception is thrown for every rejected request and only used for flow control
+     */
+    public ConcurrencyLimitExceedException(String key) {
+        super(null, null, false, false);
+        this.key = key;
+    }
+}
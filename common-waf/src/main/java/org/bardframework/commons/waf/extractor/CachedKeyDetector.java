@@ -0,0 +1,39 @@
+package org.bardframework.commons.waf.extractor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes key of delegate at most once per request, result is kept in a request attribute,
+ * so rules and composite detectors that share a detector instance do not compute it again.
+ */
+public class CachedKeyDetector implements RequestKeyDetector {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final Object NULL_KEY = new Object();
+
+    private final RequestKeyDetector delegate;
+    private final String attributeName;
+
+    public CachedKeyDetector(RequestKeyDetector delegate) {
+        this.delegate = delegate;
+        this.attributeName = CachedKeyDetector.class.getName() + "." + SEQUENCE.incrementAndGet();
+    }
+
+    public static RequestKeyDetector of(RequestKeyDetector detector) {
+        return detector instanceof CachedKeyDetector ? detector : new CachedKeyDetector(detector);
+    }
+
+    @Override
+    public String getUniqueKey(HttpServletRequest request, HttpServletResponse response) {
+        Object cached = request.getAttribute(attributeName);
+        if (null != cached) {
+            return cached == NULL_KEY ? null : (String) cached;
+        }
+        String key = delegate.getUniqueKey(request, response);
+        request.setAttribute(attributeName, null == key ? NULL_KEY : key);
+        return key;
+    }
+}
@@ -0,0 +1,47 @@
+package org.bardframework.commons.waf.extractor;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.util.List;
+
+/**
+ * Combines keys of several detectors (e.g. ip, header and cookie) into one key, each part is computed at most once per request.
+ * Missing parts are kept empty so position of parts stays fixed, null is returned only if all parts are missing.
+ */
+public class CompositeKeyDetector implements RequestKeyDetector {
+
+    public static final char DEFAULT_DELIMITER = '|';
+
+    private final List<RequestKeyDetector> detectors;
+    private final char delimiter;
+
+    public CompositeKeyDetector(List<RequestKeyDetector> detectors) {
+        this(detectors, DEFAULT_DELIMITER);
+    }
+
+    public CompositeKeyDetector(List<RequestKeyDetector> detectors, char delimiter) {
+        if (detectors.isEmpty()) {
+            throw new IllegalArgumentException("at least one detector is required");
+        }
+        this.detectors = detectors.stream().map(CachedKeyDetector::of).toList();
+        this.delimiter = delimiter;
+    }
+
+    @Override
+    public String getUniqueKey(HttpServletRequest request, HttpServletResponse response) {
+        StringBuilder key = new StringBuilder(64);
+        boolean found = false;
+        for (int i = 0; i < detectors.size(); i++) {
+            if (i > 0) {
+                key.append(delimiter);
+            }
+            String part = detectors.get(i).getUniqueKey(request, response);
+            if (null != part) {
+                key.append(part);
+                found = true;
+            }
+        }
+        return found ? key.toString() : null;
+    }
+}
@@ -3,13 +3,19 @@ package org.bardframework.commons.waf.extractor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.lang3.StringUtils;
+import org.bardframework.commons.waf.ip.ForwardedIpResolver;
 
 import java.util.Arrays;
+import java.util.Enumeration;
 import java.util.List;
 
 public class IpDetector implements RequestKeyDetector {
 
     private final List<String> headerIpCandidates;
+    /**
+     * if set, client ip is resolved from forwarded chain skipping trusted proxies, instead of first header value
+     */
+    private final ForwardedIpResolver resolver;
 
     public IpDetector() {
         this.headerIpCandidates = Arrays.asList(
@@ -25,10 +31,17 @@ public class IpDetector implements RequestKeyDetector {
                 "HTTP_VIA",
                 "REMOTE_ADDR"
         );
+        this.resolver = null;
     }
 
     public IpDetector(List<String> headerIpCandidates) {
         this.headerIpCandidates = headerIpCandidates;
+        this.resolver = null;
+    }
+
+    public IpDetector(ForwardedIpResolver resolver) {
+        this.headerIpCandidates = resolver.getHeaders();
+        this.resolver = resolver;
     }
 
     @Override
@@ -37,10 +50,17 @@ public class IpDetector implements RequestKeyDetector {
     }
 
     public String detect(HttpServletRequest request) {
+        if (null != resolver) {
+            return resolver.resolve(request.getRemoteAddr(), name -> {
+                Enumeration<String> values = request.getHeaders(name);
+                return null == values ? null : values.asIterator();
+            });
+        }
         for (String header : headerIpCandidates) {
             String headerValue = request.getHeader(header);
             if (StringUtils.isNotEmpty(headerValue) && !"unknown".equalsIgnoreCase(headerValue)) {
-                return headerValue.split(",")[0];
+                int comma = headerValue.indexOf(',');
+                return comma < 0 ? headerValue : headerValue.substring(0, comma);
             }
         }
         return request.getRemoteAddr();
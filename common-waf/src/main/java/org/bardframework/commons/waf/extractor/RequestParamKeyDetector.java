@@ -3,16 +3,66 @@ package org.bardframework.commons.waf.extractor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+
 public class RequestParamKeyDetector implements RequestKeyDetector {
 
     private final String paramName;
+    /**
+     * if true, only query string is read, {@link HttpServletRequest#getParameter(String)} parses body of form posts,
+     * so it is avoided to not parse body of requests that are not admitted yet.
+     */
+    private final boolean queryStringOnly;
 
     public RequestParamKeyDetector(String paramName) {
+        this(paramName, false);
+    }
+
+    public RequestParamKeyDetector(String paramName, boolean queryStringOnly) {
         this.paramName = paramName;
+        this.queryStringOnly = queryStringOnly;
     }
 
     @Override
     public String getUniqueKey(HttpServletRequest request, HttpServletResponse response) {
-        return request.getParameter(paramName);
+        return queryStringOnly ? queryParameter(request.getQueryString(), paramName) : request.getParameter(paramName);
+    }
+
+    /**
+     * @return decoded value of first parameter with given name, null if query has no such parameter
+     */
+    public static String queryParameter(String query, String name) {
+        if (null == query) {
+            return null;
+        }
+        int length = query.length();
+        int start = 0;
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            int nameEnd = start + name.length();
+            if (nameEnd <= end && query.startsWith(name, start) && (nameEnd == end || query.charAt(nameEnd) == '=')) {
+                return nameEnd == end ? "" : decode(query.substring(nameEnd + 1, end));
+            }
+            start = end + 1;
+        }
+        return null;
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('%') < 0 && value.indexOf('+') < 0) {
+            return value;
+        }
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            /*
+                malformed escape, raw value is still a stable key
+             */
+            return value;
+        }
     }
 }
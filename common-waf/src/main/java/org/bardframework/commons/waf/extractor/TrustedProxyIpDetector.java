@@ -0,0 +1,19 @@
+package org.bardframework.commons.waf.extractor;
+
+import org.bardframework.commons.waf.ip.ForwardedIpResolver;
+import org.bardframework.commons.waf.ip.IpPrefixSet;
+
+/**
+ * detects client ip only from configured headers, skipping trusted proxies in forwarded chain,
+ * so clients can't choose their rate limit key by sending a fake X-Forwarded-For.
+ */
+public class TrustedProxyIpDetector extends IpDetector {
+
+    public TrustedProxyIpDetector(IpPrefixSet trustedProxies) {
+        this(new ForwardedIpResolver(trustedProxies));
+    }
+
+    public TrustedProxyIpDetector(ForwardedIpResolver resolver) {
+        super(resolver);
+    }
+}
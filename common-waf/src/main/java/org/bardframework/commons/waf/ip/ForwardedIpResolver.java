@@ -0,0 +1,145 @@
+package org.bardframework.commons.waf.ip;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Resolves client ip from forwarded headers (e.g. X-Forwarded-For) without trusting spoofed values.
+ * Headers are only used if direct peer is a trusted proxy, then chain is walked right to left and first address
+ * that is not a trusted proxy is the client. All lines of a header are used in order, so a fake line sent by client
+ * can't hide addresses appended by proxies in later lines. Header values are scanned in place, without split or regex.
+ */
+@Getter
+public class ForwardedIpResolver {
+
+    /**
+     * only these headers are checked, in order
+     */
+    private final List<String> headers;
+    private final IpPrefixSet trustedProxies;
+    /**
+     * if true, resolved address is returned in packed hex form, so keys are compact and all forms of an ipv6 address are same
+     */
+    private final boolean packed;
+
+    public ForwardedIpResolver(IpPrefixSet trustedProxies) {
+        this(List.of("X-Forwarded-For"), trustedProxies, false);
+    }
+
+    public ForwardedIpResolver(List<String> headers, IpPrefixSet trustedProxies, boolean packed) {
+        this.headers = List.copyOf(headers);
+        this.trustedProxies = trustedProxies;
+        this.packed = packed;
+    }
+
+    /**
+     * @param remoteAddress address of direct peer
+     * @param headerGetter  returns all values of a header in order they are received, or null. values are iterated once,
+     *                      a single line is scanned in place and only multiple lines are joined
+     * @return client address, or address of direct peer if there is no forwarded header,
+     * or if chain has an invalid entry before any address that is not a trusted proxy
+     */
+    public String resolve(String remoteAddress, Function<String, Iterator<String>> headerGetter) {
+        byte[] remote = IpAddresses.parse(remoteAddress);
+        if (null == remote || !trustedProxies.contains(remote)) {
+            return this.toKey(remoteAddress, remote);
+        }
+        for (String header : headers) {
+            Iterator<String> values = headerGetter.apply(header);
+            if (null == values || !values.hasNext()) {
+                continue;
+            }
+            String chain = values.next();
+            if (values.hasNext()) {
+                StringBuilder lines = new StringBuilder(chain);
+                while (values.hasNext()) {
+                    lines.append(',').append(values.next());
+                }
+                chain = lines.toString();
+            }
+            if (null == chain || chain.isBlank()) {
+                continue;
+            }
+            String client = this.resolve(chain);
+            /*
+                client is unknown if chain is invalid, addresses of trusted proxies in chain are not used as key
+             */
+            return null == client ? this.toKey(remoteAddress, remote) : client;
+        }
+        return this.toKey(remoteAddress, remote);
+    }
+
+    /**
+     * @return right most address of chain that is not a trusted proxy, left most address if all are trusted,
+     * or null if an invalid entry is reached before any address that is not a trusted proxy
+     */
+    private String resolve(String chain) {
+        byte[] client = null;
+        int clientStart = 0;
+        int clientEnd = 0;
+        int end = chain.length();
+        while (end > 0) {
+            /*
+                empty entries, e.g. of empty header lines, are skipped
+             */
+            while (end > 0 && (chain.charAt(end - 1) == ',' || chain.charAt(end - 1) == ' ')) {
+                end--;
+            }
+            if (end == 0) {
+                break;
+            }
+            int comma = chain.lastIndexOf(',', end - 1);
+            int start = comma + 1;
+            while (start < end && chain.charAt(start) == ' ') {
+                start++;
+            }
+            while (end > start && chain.charAt(end - 1) == ' ') {
+                end--;
+            }
+            if (start < end && chain.charAt(start) == '[') {
+                /*
+                    [ipv6]:port
+                 */
+                int close = chain.indexOf(']', start);
+                if (close < 0 || close >= end) {
+                    break;
+                }
+                start++;
+                end = close;
+            } else {
+                int colon = chain.indexOf(':', start);
+                if (colon >= 0 && colon < end && chain.lastIndexOf(':', end - 1) == colon) {
+                    /*
+                        ipv4:port, ipv6 addresses have at least two colons
+                     */
+                    end = colon;
+                }
+            }
+            byte[] address = IpAddresses.parse(chain, start, end);
+            if (null == address) {
+                /*
+                    garbage in chain, addresses before it can't be trusted
+                 */
+                return null;
+            }
+            client = address;
+            clientStart = start;
+            clientEnd = end;
+            if (!trustedProxies.contains(address)) {
+                break;
+            }
+            end = comma;
+        }
+        if (null == client) {
+            return null;
+        }
+        return packed ? IpAddresses.toHex(client) : chain.substring(clientStart, clientEnd);
+    }
+
+    private String toKey(String address, byte[] parsed) {
+        return packed && null != parsed ? IpAddresses.toHex(parsed) : address;
+    }
+}
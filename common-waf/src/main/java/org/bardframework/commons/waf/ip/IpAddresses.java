@@ -0,0 +1,178 @@
+package org.bardframework.commons.waf.ip;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * parses textual ip addresses to bytes without any dns lookup or intermediate objects.
+ */
+@UtilityClass
+public class IpAddresses {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return 4 bytes for ipv4, 16 bytes for ipv6 (ipv4 mapped ipv6 addresses are returned as ipv4),
+     * or null if given value is not an ip address
+     */
+    public static byte[] parse(String ip) {
+        return null == ip ? null : parse(ip, 0, ip.length());
+    }
+
+    /**
+     * parses address in given range of chars, so addresses inside a bigger value (e.g. a header) are parsed without substring.
+     */
+    public static byte[] parse(CharSequence value, int start, int end) {
+        if (start >= end) {
+            return null;
+        }
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == ':') {
+                return parseIpv6(value, start, end);
+            }
+        }
+        byte[] address = new byte[4];
+        return parseIpv4(value, start, end, address, 0) ? address : null;
+    }
+
+    /**
+     * @return packed form of address, 8 (ipv4) or 32 (ipv6) hex chars, same for all textual forms of an address
+     */
+    public static String toHex(byte[] address) {
+        char[] chars = new char[address.length * 2];
+        for (int i = 0; i < address.length; i++) {
+            chars[i * 2] = HEX[(address[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[address[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return address of packed form returned by {@link #toHex(byte[])}, or null if given value is not 8 or 32 hex chars
+     */
+    public static byte[] fromHex(String value) {
+        if (null == value || (value.length() != 8 && value.length() != 32)) {
+            return null;
+        }
+        byte[] address = new byte[value.length() / 2];
+        for (int i = 0; i < address.length; i++) {
+            int high = Character.digit(value.charAt(i * 2), 16);
+            int low = Character.digit(value.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            address[i] = (byte) (high << 4 | low);
+        }
+        return address;
+    }
+
+    private static boolean parseIpv4(CharSequence value, int start, int end, byte[] address, int offset) {
+        int octet = -1;
+        int parts = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return false;
+                }
+            } else if (c == '.') {
+                if (octet < 0 || parts == 3) {
+                    return false;
+                }
+                address[offset + parts++] = (byte) octet;
+                octet = -1;
+            } else {
+                return false;
+            }
+        }
+        if (octet < 0 || parts != 3) {
+            return false;
+        }
+        address[offset + 3] = (byte) octet;
+        return true;
+    }
+
+    private static byte[] parseIpv6(CharSequence value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == '%') {
+                /*
+                    zone id is ignored
+                 */
+                end = i;
+                break;
+            }
+        }
+        int[] groups = new int[8];
+        int count = 0;
+        int doubleColon = -1;
+        int i = start;
+        if (end - start >= 2 && value.charAt(start) == ':' && value.charAt(start + 1) == ':') {
+            doubleColon = 0;
+            i = start + 2;
+        } else if (value.charAt(start) == ':') {
+            return null;
+        }
+        while (i < end) {
+            int groupStart = i;
+            int group = 0;
+            int digits = 0;
+            int hex;
+            while (i < end && (hex = Character.digit(value.charAt(i), 16)) >= 0) {
+                if (++digits > 4) {
+                    return null;
+                }
+                group = group * 16 + hex;
+                i++;
+            }
+            if (i < end && value.charAt(i) == '.') {
+                /*
+                    embedded ipv4 in last two groups
+                 */
+                byte[] ipv4 = new byte[4];
+                if (count > 6 || !parseIpv4(value, groupStart, end, ipv4, 0)) {
+                    return null;
+                }
+                groups[count++] = (ipv4[0] & 0xff) << 8 | ipv4[1] & 0xff;
+                groups[count++] = (ipv4[2] & 0xff) << 8 | ipv4[3] & 0xff;
+                break;
+            }
+            if (digits == 0 || count == 8) {
+                return null;
+            }
+            groups[count++] = group;
+            if (i == end) {
+                break;
+            }
+            if (value.charAt(i) != ':' || ++i == end) {
+                return null;
+            }
+            if (value.charAt(i) == ':') {
+                if (doubleColon >= 0) {
+                    return null;
+                }
+                doubleColon = count;
+                i++;
+            }
+        }
+        if (doubleColon < 0 ? count != 8 : count > 7) {
+            return null;
+        }
+        byte[] address = new byte[16];
+        int tail = doubleColon < 0 ? 0 : count - doubleColon;
+        for (int g = 0; g < count; g++) {
+            int position = doubleColon >= 0 && g >= doubleColon ? 8 - tail + (g - doubleColon) : g;
+            address[position * 2] = (byte) (groups[g] >> 8);
+            address[position * 2 + 1] = (byte) groups[g];
+        }
+        return isIpv4Mapped(address) ? new byte[]{address[12], address[13], address[14], address[15]} : address;
+    }
+
+    private static boolean isIpv4Mapped(byte[] address) {
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte) 0xff && address[11] == (byte) 0xff;
+    }
+}
@@ -0,0 +1,29 @@
+package org.bardframework.commons.waf.ip;
+
+/**
+ * set of ip prefixes (CIDR blocks), both ipv4 and ipv6.
+ */
+@FunctionalInterface
+public interface IpPrefixSet {
+
+    /**
+     * @param address 4 bytes of ipv4 or 16 bytes of ipv6 address
+     */
+    boolean contains(byte[] address);
+
+    /**
+     * @param ip textual or packed form of address, so keys of a packed {@link ForwardedIpResolver} are matched too
+     * @return false if given value is not an ip address
+     */
+    default boolean contains(String ip) {
+        byte[] address = IpAddresses.parse(ip);
+        if (null == address) {
+            address = IpAddresses.fromHex(ip);
+        }
+        return null != address && this.contains(address);
+    }
+
+    default IpPrefixSet or(IpPrefixSet other) {
+        return address -> this.contains(address) || other.contains(address);
+    }
+}
@@ -0,0 +1,130 @@
+package org.bardframework.commons.waf.ip;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Binary prefix trie of ip addresses, lookup walks at most 32 (ipv4) or 128 (ipv6) nodes.
+ * Nodes are kept in int arrays instead of objects, so millions of prefixes are stored compactly.
+ * Not thread safe for adding, prefixes must be added before trie is published to readers; for changes build a new trie.
+ */
+public class IpPrefixTrie implements IpPrefixSet {
+
+    private final BitTrie ipv4 = new BitTrie();
+    private final BitTrie ipv6 = new BitTrie();
+    private int size;
+
+    public static IpPrefixTrie of(Collection<String> prefixes) {
+        IpPrefixTrie trie = new IpPrefixTrie();
+        prefixes.forEach(trie::add);
+        return trie;
+    }
+
+    /**
+     * @param prefix CIDR block (e.g. 10.0.0.0/8 or 2001:db8::/32) or a single address
+     */
+    public IpPrefixTrie add(String prefix) {
+        int slash = prefix.indexOf('/');
+        String ip = (slash < 0 ? prefix : prefix.substring(0, slash)).trim();
+        byte[] address = IpAddresses.parse(ip);
+        if (null == address) {
+            throw new IllegalArgumentException(String.format("invalid ip prefix %s", prefix));
+        }
+        int prefixLength = address.length * 8;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(prefix.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("invalid ip prefix %s", prefix), e);
+            }
+            /*
+                ipv4 mapped ipv6 prefix, e.g. ::ffff:10.0.0.0/104
+             */
+            if (address.length == 4 && ip.indexOf(':') >= 0) {
+                prefixLength -= 96;
+            }
+        }
+        return this.add(address, prefixLength);
+    }
+
+    public IpPrefixTrie add(byte[] address, int prefixLength) {
+        if (prefixLength < 0 || prefixLength > address.length * 8) {
+            throw new IllegalArgumentException(String.format("invalid prefix length %d", prefixLength));
+        }
+        this.trie(address).add(address, prefixLength);
+        size++;
+        return this;
+    }
+
+    @Override
+    public boolean contains(byte[] address) {
+        return this.trie(address).contains(address);
+    }
+
+    /**
+     * @return number of added prefixes
+     */
+    public int size() {
+        return size;
+    }
+
+    private BitTrie trie(byte[] address) {
+        if (address.length == 4) {
+            return ipv4;
+        }
+        if (address.length == 16) {
+            return ipv6;
+        }
+        throw new IllegalArgumentException(String.format("invalid address length %d", address.length));
+    }
+
+    private static class BitTrie {
+        /**
+         * child of node n for bit b is at index 2n + b, zero means no child (root can't be a child)
+         */
+        private int[] children = new int[64];
+        private final BitSet terminals = new BitSet();
+        private int nodes = 1;
+
+        void add(byte[] address, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                if (terminals.get(node)) {
+                    /*
+                        already covered by a shorter prefix
+                     */
+                    return;
+                }
+                int index = node * 2 + bit(address, bit);
+                if (children[index] == 0) {
+                    if ((nodes + 1) * 2 > children.length) {
+                        children = Arrays.copyOf(children, children.length + (children.length >> 1));
+                    }
+                    children[index] = nodes++;
+                }
+                node = children[index];
+            }
+            terminals.set(node);
+        }
+
+        boolean contains(byte[] address) {
+            int node = 0;
+            int bits = address.length * 8;
+            for (int bit = 0; bit < bits; bit++) {
+                if (terminals.get(node)) {
+                    return true;
+                }
+                node = children[node * 2 + bit(address, bit)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+            return terminals.get(node);
+        }
+
+        private static int bit(byte[] address, int bit) {
+            return (address[bit >> 3] >> (7 - (bit & 7))) & 1;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.bardframework.commons.waf.ip;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ip prefixes loaded from a file, one CIDR block or address per line, lines starting with # are comments.
+ * file is checked periodically and on change a new trie is built and published atomically, so lookups never lock.
+ */
+@Slf4j
+@Getter
+public class ReloadableIpPrefixSet implements IpPrefixSet, AutoCloseable {
+
+    private final Path file;
+    private final ScheduledExecutorService reloader;
+    private volatile IpPrefixTrie trie = new IpPrefixTrie();
+    private volatile long lastModified = Long.MIN_VALUE;
+
+    public ReloadableIpPrefixSet(Path file, long reloadIntervalMillis) {
+        this.file = file;
+        this.reloadIfModified();
+        this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "waf-ip-prefix-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean contains(byte[] address) {
+        return this.getTrie().contains(address);
+    }
+
+    public void reloadIfModified() {
+        try {
+            long modified = Files.getLastModifiedTime(this.getFile()).toMillis();
+            if (modified != this.getLastModified()) {
+                this.reload();
+                this.lastModified = modified;
+            }
+        } catch (Exception e) {
+            log.error("error reloading ip prefixes from [{}], previous prefixes are kept", this.getFile(), e);
+        }
+    }
+
+    public void reload() throws IOException {
+        IpPrefixTrie loaded = new IpPrefixTrie();
+        try (BufferedReader reader = Files.newBufferedReader(this.getFile(), StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    loaded.add(line);
+                } catch (IllegalArgumentException e) {
+                    log.warn("invalid ip prefix [{}] in [{}] ignored", line, this.getFile());
+                }
+            }
+        }
+        this.trie = loaded;
+        log.info("[{}] ip prefixes loaded from [{}]", loaded.size(), this.getFile());
+    }
+
+    @Override
+    public void close() {
+        this.getReloader().shutdownNow();
+    }
+}
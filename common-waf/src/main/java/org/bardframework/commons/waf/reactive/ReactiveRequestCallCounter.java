@@ -0,0 +1,45 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.bardframework.commons.waf.CallLimit;
+import org.bardframework.commons.waf.CallLimitStatus;
+import org.bardframework.commons.waf.RequestCallCounter;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ReactiveRequestCallCounter {
+
+    /**
+     * records a call for each of given limits in order, and stops at first limit that is exceeded.
+     *
+     * @return index of first exceeded limit, or -1 if call is allowed by all limits
+     * @see RequestCallCounter#tryAcquireAll(List)
+     */
+    Mono<Integer> tryAcquireAll(List<CallLimit> limits);
+
+    /**
+     * same as {@link #tryAcquireAll}, also returns quota of reported limit, default implementation doesn't know quota.
+     *
+     * @see RequestCallCounter#tryAcquireAllWithStatus(List)
+     */
+    default Mono<CallLimitStatus> tryAcquireAllWithStatus(List<CallLimit> limits) {
+        return this.tryAcquireAll(limits).map(rejected -> rejected < 0 ? CallLimitStatus.ALLOWED : CallLimitStatus.rejected(limits.get(rejected)));
+    }
+
+    /**
+     * adapts a counter that never blocks, e.g. in memory counter. must not be used for counters that call remote servers.
+     */
+    static ReactiveRequestCallCounter of(RequestCallCounter counter) {
+        return new ReactiveRequestCallCounter() {
+            @Override
+            public Mono<Integer> tryAcquireAll(List<CallLimit> limits) {
+                return Mono.fromSupplier(() -> counter.tryAcquireAll(limits));
+            }
+
+            @Override
+            public Mono<CallLimitStatus> tryAcquireAllWithStatus(List<CallLimit> limits) {
+                return Mono.fromSupplier(() -> counter.tryAcquireAllWithStatus(limits));
+            }
+        };
+    }
+}
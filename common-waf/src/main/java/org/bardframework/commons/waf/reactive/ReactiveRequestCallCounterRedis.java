@@ -0,0 +1,72 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.bardframework.commons.waf.CallLimit;
+import org.bardframework.commons.waf.CallLimitStatus;
+import org.bardframework.commons.waf.RateLimitScript;
+import org.springframework.data.redis.connection.ReactiveRedisClusterConnection;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * non-blocking redis counter, uses same script of {@link org.bardframework.commons.waf.RequestCallCounterRedis}
+ * through reactive template (lettuce reactive api), so no event loop thread is blocked.
+ */
+public class ReactiveRequestCallCounterRedis implements ReactiveRequestCallCounter {
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    /**
+     * detected lazily using first connection.
+     */
+    private volatile Boolean cluster;
+
+    public ReactiveRequestCallCounterRedis(ReactiveRedisTemplate<String, String> redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Mono<Integer> tryAcquireAll(List<CallLimit> limits) {
+        return this.tryAcquireAllWithStatus(limits).map(status -> status.isAllowed() ? -1 : limits.indexOf(status.getCallLimit()));
+    }
+
+    @Override
+    public Mono<CallLimitStatus> tryAcquireAllWithStatus(List<CallLimit> limits) {
+        if (limits.size() <= 1) {
+            return this.evaluate(limits);
+        }
+        return this.isCluster().flatMap(isCluster -> isCluster ? this.evaluate(RateLimitScript.groupBySlot(limits), 0, CallLimitStatus.ALLOWED) : this.evaluate(limits));
+    }
+
+    /**
+     * evaluates groups of same slot keys one after another, until a limit is exceeded
+     */
+    private Mono<CallLimitStatus> evaluate(List<List<CallLimit>> groups, int index, CallLimitStatus result) {
+        if (index >= groups.size()) {
+            return Mono.just(result);
+        }
+        return this.evaluate(groups.get(index)).flatMap(status -> status.isAllowed() ? this.evaluate(groups, index + 1, result.min(status)) : Mono.just(status));
+    }
+
+    /**
+     * script returns a multi bulk reply, that is emitted as a single list or as its elements
+     */
+    private Mono<CallLimitStatus> evaluate(List<CallLimit> limits) {
+        if (limits.isEmpty()) {
+            return Mono.just(CallLimitStatus.ALLOWED);
+        }
+        return redisTemplate.execute(RateLimitScript.SCRIPT, RateLimitScript.keys(limits), RateLimitScript.args(limits))
+                .collectList()
+                .map(result -> RateLimitScript.status(result.size() == 1 && result.get(0) instanceof List<?> list ? list : result, limits));
+    }
+
+    private Mono<Boolean> isCluster() {
+        if (null != cluster) {
+            return Mono.just(cluster);
+        }
+        return redisTemplate.execute(connection -> Mono.just(connection instanceof ReactiveRedisClusterConnection))
+                .next()
+                .defaultIfEmpty(false)
+                .doOnNext(isCluster -> cluster = isCluster);
+    }
+}
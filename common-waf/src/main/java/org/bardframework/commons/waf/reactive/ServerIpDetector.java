@@ -0,0 +1,52 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.apache.commons.lang3.StringUtils;
+import org.bardframework.commons.waf.ip.ForwardedIpResolver;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+public class ServerIpDetector implements ServerRequestKeyDetector {
+
+    private final List<String> headerIpCandidates;
+    /**
+     * if set, client ip is resolved from forwarded chain skipping trusted proxies, instead of first header value
+     */
+    private final ForwardedIpResolver resolver;
+
+    public ServerIpDetector() {
+        this(List.of("X-Forwarded-For"));
+    }
+
+    public ServerIpDetector(List<String> headerIpCandidates) {
+        this.headerIpCandidates = headerIpCandidates;
+        this.resolver = null;
+    }
+
+    public ServerIpDetector(ForwardedIpResolver resolver) {
+        this.headerIpCandidates = resolver.getHeaders();
+        this.resolver = resolver;
+    }
+
+    @Override
+    public String getUniqueKey(ServerWebExchange exchange) {
+        if (null != resolver) {
+            InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+            String remoteIp = null == remoteAddress || null == remoteAddress.getAddress() ? null : remoteAddress.getAddress().getHostAddress();
+            return resolver.resolve(remoteIp, name -> {
+                List<String> values = exchange.getRequest().getHeaders().get(name);
+                return null == values ? null : values.iterator();
+            });
+        }
+        for (String header : headerIpCandidates) {
+            String headerValue = exchange.getRequest().getHeaders().getFirst(header);
+            if (StringUtils.isNotEmpty(headerValue) && !"unknown".equalsIgnoreCase(headerValue)) {
+                int comma = headerValue.indexOf(',');
+                return (comma < 0 ? headerValue : headerValue.substring(0, comma)).trim();
+            }
+        }
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return null == remoteAddress || null == remoteAddress.getAddress() ? null : remoteAddress.getAddress().getHostAddress();
+    }
+}
@@ -0,0 +1,19 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.springframework.http.HttpCookie;
+import org.springframework.web.server.ServerWebExchange;
+
+public class ServerRequestCookieKeyDetector implements ServerRequestKeyDetector {
+
+    private final String cookieName;
+
+    public ServerRequestCookieKeyDetector(String cookieName) {
+        this.cookieName = cookieName;
+    }
+
+    @Override
+    public String getUniqueKey(ServerWebExchange exchange) {
+        HttpCookie cookie = exchange.getRequest().getCookies().getFirst(cookieName);
+        return null == cookie ? null : cookie.getValue();
+    }
+}
@@ -0,0 +1,17 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.springframework.web.server.ServerWebExchange;
+
+public class ServerRequestHeaderKeyDetector implements ServerRequestKeyDetector {
+
+    private final String headerName;
+
+    public ServerRequestHeaderKeyDetector(String headerName) {
+        this.headerName = headerName;
+    }
+
+    @Override
+    public String getUniqueKey(ServerWebExchange exchange) {
+        return exchange.getRequest().getHeaders().getFirst(headerName);
+    }
+}
@@ -0,0 +1,12 @@
+package org.bardframework.commons.waf.reactive;
+
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * reactive equivalent of {@link org.bardframework.commons.waf.extractor.RequestKeyDetector}
+ */
+public interface ServerRequestKeyDetector {
+
+    String getUniqueKey(ServerWebExchange exchange);
+
+}
@@ -0,0 +1,175 @@
+package org.bardframework.commons.waf.reactive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bardframework.commons.waf.CallLimit;
+import org.bardframework.commons.waf.CallLimitStatus;
+import org.bardframework.commons.waf.LogRateLimiter;
+import org.bardframework.commons.waf.PenaltyBox;
+import org.bardframework.commons.waf.RequestLimitChecker;
+import org.bardframework.commons.waf.RequestRuleIndex;
+import org.bardframework.commons.waf.WafMetrics;
+import org.bardframework.commons.waf.ip.IpPrefixSet;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * reactive equivalent of {@link org.bardframework.commons.waf.WafFilter}, uses same rules, but detects unique key of request
+ * using a {@link ServerRequestKeyDetector} and counts calls using a non-blocking {@link ReactiveRequestCallCounter}.
+ * counter and key detector of rules are not used.
+ * Block list, penalty box, metrics and RateLimit-* headers work as in servlet filter, violations are counted by penalty box
+ * on bounded elastic scheduler, since its counter may block. Concurrency limits and adaptive load shedding are not supported,
+ * they hold permits of blocking limiters for whole request.
+ */
+@Slf4j
+public class WafWebFilter implements WebFilter {
+
+    private final RequestRuleIndex<Rule> rules;
+    private final ServerRequestKeyDetector keyDetector;
+    private final ReactiveRequestCallCounter counter;
+    /**
+     * requests from these ip ranges are rejected before any call limit check, null means no block list
+     */
+    private final IpPrefixSet blockList;
+    private final ServerRequestKeyDetector ipDetector;
+    /**
+     * keys that exceed their limits repeatedly are banned and rejected without calling counter, null means no ban
+     */
+    private final PenaltyBox penaltyBox;
+    private final LogRateLimiter rejectionLog = new LogRateLimiter(10);
+    /**
+     * null means no metrics
+     */
+    private WafMetrics metrics;
+
+    public WafWebFilter(List<RequestLimitChecker> checkers, ServerRequestKeyDetector keyDetector, ReactiveRequestCallCounter counter) {
+        this(checkers, keyDetector, counter, null, null, null);
+    }
+
+    public WafWebFilter(List<RequestLimitChecker> checkers, ServerRequestKeyDetector keyDetector, ReactiveRequestCallCounter counter, IpPrefixSet blockList, ServerRequestKeyDetector ipDetector, PenaltyBox penaltyBox) {
+        this.rules = new RequestRuleIndex<>(checkers.stream().map(Rule::new).toList(), rule -> rule.checker.getHttpMethod(), rule -> rule.checker.getPath());
+        this.keyDetector = keyDetector;
+        this.counter = counter;
+        this.blockList = blockList;
+        this.ipDetector = null == ipDetector ? new ServerIpDetector() : ipDetector;
+        this.penaltyBox = penaltyBox;
+    }
+
+    public void setMetrics(WafMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (null != blockList) {
+            String ip = ipDetector.getUniqueKey(exchange);
+            if (blockList.contains(ip)) {
+                if (rejectionLog.tryAcquire()) {
+                    log.warn("request from blocked ip [{}] rejected, [{}] similar logs suppressed", ip, rejectionLog.drainSuppressed());
+                }
+                if (null != metrics) {
+                    metrics.rejected("block-list", ip);
+                }
+                exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+                return exchange.getResponse().setComplete();
+            }
+        }
+        PathContainer path = request.getPath().pathWithinApplication();
+        List<CallLimit> limits = new ArrayList<>();
+        String uniqueKey = null;
+        for (Rule rule : rules.candidates(request.getMethod().name(), path.value())) {
+            if (!rule.matches(request.getMethod(), path)) {
+                continue;
+            }
+            if (null == uniqueKey) {
+                uniqueKey = keyDetector.getUniqueKey(exchange);
+                if (null == uniqueKey) {
+                    log.warn("can't detect unique key of request [{} {}] for checking call limit", request.getMethod(), path.value());
+                    break;
+                }
+            }
+            CallLimit limit = rule.checker.toCallLimit(uniqueKey);
+            if (null == limit) {
+                continue;
+            }
+            if (null != penaltyBox) {
+                long banRemainingMillis = penaltyBox.getBanRemainingMillis(limit.getBanKey());
+                if (banRemainingMillis > 0) {
+                    if (null != metrics) {
+                        metrics.rejected(limit.getRule(), limit.getKey());
+                    }
+                    exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(CallLimitStatus.toSeconds(banRemainingMillis)));
+                    return this.reject(exchange, limit);
+                }
+            }
+            limits.add(limit);
+        }
+        if (limits.isEmpty()) {
+            return chain.filter(exchange);
+        }
+        return this.tryAcquireAll(limits).flatMap(status -> {
+            status.writeHeaders(exchange.getResponse().getHeaders()::set);
+            if (status.isAllowed()) {
+                if (null != metrics) {
+                    for (CallLimit limit : limits) {
+                        metrics.allowed(limit.getRule());
+                    }
+                }
+                return chain.filter(exchange);
+            }
+            if (null != metrics) {
+                metrics.rejected(status.getCallLimit().getRule(), status.getCallLimit().getKey());
+            }
+            if (null != penaltyBox) {
+                String banKey = status.getCallLimit().getBanKey();
+                Schedulers.boundedElastic().schedule(() -> penaltyBox.recordViolation(banKey));
+            }
+            return this.reject(exchange, status.getCallLimit());
+        });
+    }
+
+    private Mono<CallLimitStatus> tryAcquireAll(List<CallLimit> limits) {
+        if (null == metrics) {
+            return counter.tryAcquireAllWithStatus(limits);
+        }
+        long start = System.nanoTime();
+        return counter.tryAcquireAllWithStatus(limits)
+                .doOnError(e -> metrics.error(counter))
+                .doFinally(signal -> metrics.recordLatency(counter, System.nanoTime() - start));
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, CallLimit limit) {
+        if (rejectionLog.tryAcquire()) {
+            log.warn("call limit exceed for [{}], [{}] similar logs suppressed", limit.getKey(), rejectionLog.drainSuppressed());
+        }
+        exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        return exchange.getResponse().setComplete();
+    }
+
+    private static class Rule {
+        private final RequestLimitChecker checker;
+        private final PathPattern pattern;
+
+        Rule(RequestLimitChecker checker) {
+            this.checker = checker;
+            this.pattern = PathPatternParser.defaultInstance.parse(checker.getPath());
+        }
+
+        boolean matches(HttpMethod method, PathContainer path) {
+            return (null == checker.getHttpMethod() || checker.getHttpMethod().equals(method)) && pattern.matches(path);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+-- KEYS[1] is sorted set of leases of a key, scored by lease expire time in milliseconds
+-- ARGV: max concurrent, lease ttl in milliseconds, lease id
+-- expired leases (e.g. of crashed nodes) are removed first, returns 1 if lease is acquired, otherwise 0
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', string.format('%d', now))
+if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then
+    return 0
+end
+redis.call('ZADD', KEYS[1], string.format('%d', now + tonumber(ARGV[2])), ARGV[3])
+redis.call('PEXPIRE', KEYS[1], ARGV[2])
+return 1
@@ -0,0 +1,11 @@
+-- KEYS[1] is sorted set of leases of a key, scored by lease expire time in milliseconds
+-- ARGV: lease ttl in milliseconds, ids of leases held by caller
+-- expire time of leases that are still in set is extended, released or expired leases are not added again
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local expireTime = string.format('%d', now + tonumber(ARGV[1]))
+for i = 2, #ARGV do
+    redis.call('ZADD', KEYS[1], 'XX', expireTime, ARGV[i])
+end
+redis.call('PEXPIRE', KEYS[1], ARGV[1])
+return 1
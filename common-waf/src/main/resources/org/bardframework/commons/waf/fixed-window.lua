@@ -0,0 +1,8 @@
+-- increments counter of a fixed window and sets its ttl atomically.
+-- KEYS[1]: counter key, ARGV[1]: window length in milliseconds
+local count = redis.call('INCR', KEYS[1])
+-- ttl is also set when key has no ttl, e.g. written by an older client that died between INCR and EXPIRE
+if count == 1 or redis.call('PTTL', KEYS[1]) == -1 then
+    redis.call('PEXPIRE', KEYS[1], ARGV[1])
+end
+return count
@@ -0,0 +1,105 @@
+-- evaluates limits of KEYS in order and stops at first exceeded one, so a rejected call is not counted by next limits.
+-- ARGV has 4 values for each key: algorithm, limit, period in milliseconds, unique member of this call (used by sliding log)
+-- returns {rejected, reported, remaining, reset}: rejected is 0 if call is allowed by all limits, otherwise 1 based index
+-- of first exceeded limit. reported is 1 based index of exceeded limit, or of limit with the least remaining calls,
+-- remaining and reset (milliseconds) are quota of reported limit.
+-- each algorithm returns allowed, remaining calls and milliseconds until reset (or until next call is allowed if rejected)
+local time = redis.call('TIME')
+local nowMillis = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local nowMicros = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+-- counter is reset after each period, ttl is also set when key has no ttl, e.g. client died between INCR and EXPIRE
+local function fixedWindow(key, limit, period)
+    local count = redis.call('INCR', key)
+    local ttl = -1
+    if count > 1 then
+        ttl = redis.call('PTTL', key)
+    end
+    if ttl < 0 then
+        redis.call('PEXPIRE', key, period)
+        ttl = period
+    end
+    return count <= limit, math.max(limit - count, 0), ttl
+end
+
+-- keeps time of allowed calls in a sorted set and allows call if less than limit calls exist in last period
+-- numbers are formatted explicitly, default lua conversion loses precision of microsecond timestamps
+local function slidingWindowLog(key, limit, period, member)
+    redis.call('ZREMRANGEBYSCORE', key, '-inf', string.format('%d', nowMicros - period * 1000))
+    local count = redis.call('ZCARD', key)
+    -- a call is freed when oldest call leaves window
+    local reset = period
+    if count > 0 then
+        local oldest = redis.call('ZRANGE', key, 0, 0, 'WITHSCORES')
+        reset = math.max(math.ceil((tonumber(oldest[2]) + period * 1000 - nowMicros) / 1000), 0)
+    end
+    if count >= limit then
+        return false, 0, reset
+    end
+    redis.call('ZADD', key, string.format('%d', nowMicros), member)
+    redis.call('PEXPIRE', key, period)
+    return true, limit - count - 1, reset
+end
+
+-- estimates calls of last period using count of current and previous fixed windows, weighted by overlap
+local function slidingWindowCounter(key, limit, period)
+    local index = math.floor(nowMillis / period)
+    local state = redis.call('HMGET', key, 'w', 'c', 'p')
+    local stateIndex = tonumber(state[1])
+    local current = tonumber(state[2]) or 0
+    local previous = tonumber(state[3]) or 0
+    if stateIndex ~= index then
+        if stateIndex == index - 1 then
+            previous = current
+        else
+            previous = 0
+        end
+        current = 0
+    end
+    local reset = period - (nowMillis % period)
+    local estimate = previous * (reset / period) + current
+    if estimate >= limit then
+        return false, 0, reset
+    end
+    redis.call('HSET', key, 'w', string.format('%d', index), 'c', current + 1, 'p', previous)
+    redis.call('PEXPIRE', key, period * 2)
+    return true, math.max(math.floor(limit - estimate - 1), 0), reset
+end
+
+-- token bucket implemented as GCRA, only theoretical arrival time (tat) of next call is stored
+local function tokenBucket(key, limit, period)
+    local periodMicros = period * 1000
+    local tat = tonumber(redis.call('GET', key)) or nowMicros
+    if tat < nowMicros then
+        tat = nowMicros
+    end
+    local interval = periodMicros / limit
+    local newTat = tat + interval
+    if newTat - nowMicros > periodMicros then
+        return false, 0, math.ceil((newTat - nowMicros - periodMicros) / 1000)
+    end
+    redis.call('SET', key, string.format('%d', newTat), 'PX', string.format('%d', math.ceil((newTat - nowMicros) / 1000)))
+    -- bucket is full again when theoretical arrival time is reached
+    return true, math.floor((periodMicros - (newTat - nowMicros)) / interval), math.ceil((newTat - nowMicros) / 1000)
+end
+
+local algorithms = {
+    FIXED_WINDOW = fixedWindow,
+    SLIDING_WINDOW_LOG = slidingWindowLog,
+    SLIDING_WINDOW_COUNTER = slidingWindowCounter,
+    TOKEN_BUCKET = tokenBucket
+}
+
+local reported, reportedRemaining, reportedReset = 0, -1, -1
+for i, key in ipairs(KEYS) do
+    local offset = (i - 1) * 4
+    local algorithm = algorithms[ARGV[offset + 1]]
+    local allowed, remaining, reset = algorithm(key, tonumber(ARGV[offset + 2]), tonumber(ARGV[offset + 3]), ARGV[offset + 4])
+    if not allowed then
+        return { i, i, 0, reset }
+    end
+    if reported == 0 or remaining < reportedRemaining then
+        reported, reportedRemaining, reportedReset = i, remaining, reset
+    end
+end
+return { 0, reported, reportedRemaining, reportedReset }
@@ -0,0 +1,68 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class AdaptiveLoadShedderTest {
+
+    @Test
+    void shedLowPriorityFirst() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder();
+        shedder.setInitialLimit(10);
+        shedder.setPriorities(List.of(new RequestPriorityRule(null, "/admin/**", RequestPriority.CRITICAL)));
+        shedder.setDefaultShare(RequestPriority.NORMAL.getShare());
+        MockHttpServletRequest request = new MockHttpServletRequest(HttpMethod.GET.name(), "/api/users");
+        MockHttpServletRequest adminRequest = new MockHttpServletRequest(HttpMethod.GET.name(), "/admin/users");
+
+        for (int i = 0; i < 7; i++) {
+            Assertions.assertThat(shedder.tryAcquire(request, "/api/users")).isNotNull();
+        }
+        Assertions.assertThat(shedder.tryAcquire(request, "/api/users")).isNull();
+        Assertions.assertThat(shedder.tryAcquire(adminRequest, "/admin/users")).isNotNull();
+        Assertions.assertThat(shedder.getShedCount().sum()).isEqualTo(1);
+    }
+
+    @Test
+    void unmatchedUseWholeLimit() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder();
+        shedder.setInitialLimit(10);
+        MockHttpServletRequest request = new MockHttpServletRequest(HttpMethod.GET.name(), "/api/users");
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertThat(shedder.tryAcquire(request, "/api/users")).isNotNull();
+        }
+        Assertions.assertThat(shedder.tryAcquire(request, "/api/users")).isNull();
+
+        shedder.setPriorities(List.of(new RequestPriorityRule(null, "/api/reports/**", RequestPriority.LOW)));
+        Assertions.assertThat(shedder.tryAcquire(new MockHttpServletRequest(HttpMethod.GET.name(), "/api/reports/1"), "/api/reports/1")).isNull();
+        Assertions.assertThat(shedder.getShedCount().sum()).isEqualTo(2);
+    }
+
+    @Test
+    void reduceLimitOnHighCpu() {
+        AdaptiveLoadShedder shedder = new AdaptiveLoadShedder();
+        shedder.setInitialLimit(100);
+        shedder.setWindowMillis(0);
+        shedder.setMinWindowSamples(1);
+        shedder.setCpuThresholdPercent(80);
+        shedder.setCpuUsage(() -> 95);
+        MockHttpServletRequest request = new MockHttpServletRequest(HttpMethod.GET.name(), "/api/users");
+
+        for (int i = 0; i < 10; i++) {
+            List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            for (int j = 0; j < 60; j++) {
+                ConcurrencyLimiter.Permit permit = shedder.tryAcquire(request, "/api/users");
+                if (null != permit) {
+                    permits.add(permit);
+                }
+            }
+            permits.forEach(ConcurrencyLimiter.Permit::close);
+        }
+        Assertions.assertThat(shedder.getLimit()).isLessThan(100);
+        Assertions.assertThat(shedder.getInFlight().get()).isZero();
+    }
+}
@@ -0,0 +1,34 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ConcurrencyLimiterFailoverTest {
+
+    private final ConcurrencyLimiter failing = (key, maxConcurrent, waitMillis) -> {
+        throw new IllegalStateException("redis is down");
+    };
+
+    @Test
+    void allow() {
+        ConcurrencyLimiterFailover limiter = new ConcurrencyLimiterFailover(failing, RequestCallCounterFailover.FailurePolicy.ALLOW, null);
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire("key", 1, 0);
+        Assertions.assertThat(permit).isNotNull();
+        permit.close();
+        Assertions.assertThat(limiter.tryAcquire("key", 1, 0)).isNotNull();
+    }
+
+    @Test
+    void deny() {
+        ConcurrencyLimiterFailover limiter = new ConcurrencyLimiterFailover(failing, RequestCallCounterFailover.FailurePolicy.DENY, null);
+        Assertions.assertThat(limiter.tryAcquire("key", 1, 0)).isNull();
+    }
+
+    @Test
+    void fallback() {
+        ConcurrencyLimiterFailover limiter = new ConcurrencyLimiterFailover(failing, RequestCallCounterFailover.FailurePolicy.FALLBACK, new ConcurrencyLimiterInMemory());
+        Assertions.assertThat(limiter.tryAcquire("key", 1, 0)).isNotNull();
+        Assertions.assertThat(limiter.tryAcquire("key", 1, 0)).isNull();
+        Assertions.assertThatThrownBy(() -> new ConcurrencyLimiterFailover(failing, RequestCallCounterFailover.FailurePolicy.FALLBACK, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,37 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class ConcurrencyLimiterInMemoryTest {
+
+    @Test
+    void tryAcquire() {
+        ConcurrencyLimiterInMemory limiter = new ConcurrencyLimiterInMemory();
+        ConcurrencyLimiter.Permit first = limiter.tryAcquire("key", 2, 0);
+        ConcurrencyLimiter.Permit second = limiter.tryAcquire("key", 2, 0);
+        Assertions.assertThat(first).isNotNull();
+        Assertions.assertThat(second).isNotNull();
+        Assertions.assertThat(limiter.tryAcquire("key", 2, 0)).isNull();
+        Assertions.assertThat(limiter.tryAcquire("other", 2, 0)).isNotNull();
+        first.close();
+        first.close();
+        Assertions.assertThat(limiter.tryAcquire("key", 2, 0)).isNotNull();
+        Assertions.assertThat(limiter.tryAcquire("key", 2, 0)).isNull();
+    }
+
+    @Test
+    void waitForPermit() throws Exception {
+        ConcurrencyLimiterInMemory limiter = new ConcurrencyLimiterInMemory();
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire("key", 1, 0);
+        CompletableFuture<ConcurrencyLimiter.Permit> waiting = CompletableFuture.supplyAsync(() -> limiter.tryAcquire("key", 1, 5_000));
+        Thread.sleep(50);
+        Assertions.assertThat(waiting).isNotDone();
+        permit.close();
+        Assertions.assertThat(waiting.get(1, TimeUnit.SECONDS)).isNotNull();
+        Assertions.assertThat(limiter.tryAcquire("key", 1, 20)).isNull();
+    }
+}
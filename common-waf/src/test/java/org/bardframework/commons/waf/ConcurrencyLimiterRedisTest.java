@@ -0,0 +1,75 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class ConcurrencyLimiterRedisTest {
+
+    @Test
+    void heldLeasesRenewed() throws InterruptedException {
+        StubRedis redis = new StubRedis();
+        try (ConcurrencyLimiterRedis limiter = new ConcurrencyLimiterRedis(redis, 30)) {
+            ConcurrencyLimiter.Permit first = limiter.tryAcquire("key", 2, 0);
+            ConcurrencyLimiter.Permit second = limiter.tryAcquire("key", 2, 0);
+            Assertions.assertThat(limiter.tryAcquire("key", 2, 0)).isNull();
+            List<String> args = this.awaitRenewal(redis, 2);
+            Assertions.assertThat(args.getFirst()).isEqualTo("30");
+            Assertions.assertThat(args.subList(1, args.size())).containsExactlyInAnyOrderElementsOf(redis.leases);
+
+            first.close();
+            second.close();
+            Assertions.assertThat(limiter.getLeases()).isEmpty();
+            redis.renewals.clear();
+            limiter.renewAll();
+            Assertions.assertThat(redis.renewals).isEmpty();
+        }
+    }
+
+    /**
+     * @return arguments of first renewal of given number of leases
+     */
+    private List<String> awaitRenewal(StubRedis redis, int leases) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            for (List<String> args : redis.renewals) {
+                if (args.size() == leases + 1) {
+                    return args;
+                }
+            }
+            Thread.sleep(5);
+        }
+        throw new AssertionError("leases are not renewed");
+    }
+
+    /**
+     * acquire script grants leases up to max concurrent and renew script calls are recorded, releases are not applied
+     */
+    private static class StubRedis extends RedisTemplate<String, String> {
+        private final List<String> leases = new CopyOnWriteArrayList<>();
+        private final List<List<String>> renewals = new CopyOnWriteArrayList<>();
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            if (script.getScriptAsString().contains("ZCARD")) {
+                if (leases.size() >= Integer.parseInt((String) args[0])) {
+                    return (T) Long.valueOf(0);
+                }
+                leases.add((String) args[2]);
+                return (T) Long.valueOf(1);
+            }
+            List<String> values = new ArrayList<>();
+            for (Object arg : args) {
+                values.add((String) arg);
+            }
+            renewals.add(values);
+            return (T) Long.valueOf(1);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class PenaltyBoxTest {
+
+    @Test
+    void banAfterViolations() throws InterruptedException {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory();
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 3, 60_000, 50)) {
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isFalse();
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isFalse();
+            Assertions.assertThat(penaltyBox.isBanned("key")).isFalse();
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isTrue();
+            Assertions.assertThat(penaltyBox.isBanned("key")).isTrue();
+            Assertions.assertThat(penaltyBox.isBanned("other")).isFalse();
+            Thread.sleep(100);
+            Assertions.assertThat(penaltyBox.isBanned("key")).isFalse();
+            penaltyBox.rebuild();
+            Assertions.assertThat(penaltyBox.size()).isZero();
+        }
+    }
+
+    @Test
+    void violationsOfBannedKeyNotCounted() {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory();
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 1, 60_000, 60_000)) {
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isTrue();
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isFalse();
+            penaltyBox.ban("key", 60_000);
+            Assertions.assertThat(counter.increment(PenaltyBox.PREFIX + "key")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void bansVisibleDuringRebuild() {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory();
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 1, 60_000, 60_000, 20_000, 60_000)) {
+            for (int i = 0; i < 10_000; i++) {
+                penaltyBox.ban("key" + i, 60_000);
+            }
+            CompletableFuture<Void> rebuilds = CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 50; i++) {
+                    penaltyBox.rebuild();
+                }
+            });
+            while (!rebuilds.isDone()) {
+                for (int i = 0; i < 10_000; i += 97) {
+                    Assertions.assertThat(penaltyBox.isBanned("key" + i)).isTrue();
+                }
+            }
+            rebuilds.join();
+        }
+    }
+
+    @Test
+    void counterFailureIsNotCounted() {
+        RequestCallCounter failing = new RequestCallCounter() {
+            @Override
+            public Long increment(String key) {
+                throw new IllegalStateException("redis is down");
+            }
+
+            @Override
+            public void expire(String key, int expiration, TimeUnit unit) {
+                throw new IllegalStateException("redis is down");
+            }
+
+            @Override
+            public Long incrementAndExpire(String key, int expiration, TimeUnit unit) {
+                throw new IllegalStateException("redis is down");
+            }
+        };
+        try (PenaltyBox penaltyBox = new PenaltyBox(failing, 1, 60_000, 60_000)) {
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isFalse();
+            Assertions.assertThat(penaltyBox.isBanned("key")).isFalse();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.bardframework.commons.waf;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class RequestCallCounterFailoverTest {
+
+    @Test
+    void openAndRecover() throws InterruptedException {
+        AtomicBoolean healthy = new AtomicBoolean(false);
+        AtomicInteger calls = new AtomicInteger();
+        try (RequestCallCounterInMemory remote = new RequestCallCounterInMemory();
+             RequestCallCounterInMemory local = new RequestCallCounterInMemory();
+             RequestCallCounterFailover counter = new RequestCallCounterFailover(new RequestCallCounter() {
+                 @Override
+                 public Long increment(String key) {
+                     calls.incrementAndGet();
+                     if (!healthy.get()) {
+                         throw new IllegalStateException("redis is down");
+                     }
+                     return remote.increment(key);
+                 }
+
+                 @Override
+                 public void expire(String key, int expiration, TimeUnit unit) {
+                     remote.expire(key, expiration, unit);
+                 }
+             }, RequestCallCounterFailover.FailurePolicy.FALLBACK, local, 0, 3, 50)) {
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertThat(counter.tryAcquire("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000)).isTrue();
+            }
+            Assertions.assertThat(counter.isOpen()).isTrue();
+            Assertions.assertThat(calls.get()).isEqualTo(3);
+            Assertions.assertThat(local.increment("key")).isEqualTo(11);
+
+            healthy.set(true);
+            Thread.sleep(100);
+            Assertions.assertThat(counter.tryAcquire("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000)).isTrue();
+            Assertions.assertThat(counter.isOpen()).isFalse();
+            Assertions.assertThat(calls.get()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    void timeout() {
+        try (RequestCallCounterFailover counter = new RequestCallCounterFailover(new RequestCallCounter() {
+            @Override
+            public Long increment(String key) {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1L;
+            }
+
+            @Override
+            public void expire(String key, int expiration, TimeUnit unit) {
+            }
+        }, RequestCallCounterFailover.FailurePolicy.DENY, null, 20, 1, 60_000)) {
+            long start = System.nanoTime();
+            Assertions.assertThat(counter.tryAcquire("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000)).isFalse();
+            Assertions.assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1_000);
+            Assertions.assertThat(counter.isOpen()).isTrue();
+        }
+    }
+
+    @Test
+    void denyDoesNotBan() {
+        RequestCallCounter down = new RequestCallCounter() {
+            @Override
+            public Long increment(String key) {
+                throw new IllegalStateException("redis is down");
+            }
+
+            @Override
+            public void expire(String key, int expiration, TimeUnit unit) {
+                throw new IllegalStateException("redis is down");
+            }
+        };
+        try (RequestCallCounterFailover counter = new RequestCallCounterFailover(down, RequestCallCounterFailover.FailurePolicy.DENY, null, 0, 1, 60_000);
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 1, 60_000, 60_000)) {
+            Assertions.assertThat(counter.tryAcquire("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000)).isFalse();
+            Assertions.assertThat(counter.isAvailable()).isFalse();
+            Assertions.assertThat(counter.incrementAndExpire("key", 1_000, TimeUnit.MILLISECONDS)).isZero();
+            Assertions.assertThat(penaltyBox.recordViolation("key")).isFalse();
+            Assertions.assertThat(penaltyBox.isBanned("key")).isFalse();
+        }
+    }
+
+    @Test
+    void metricsOfDelegate() {
+        try (RequestCallCounterInMemory local = new RequestCallCounterInMemory();
+             RequestCallCounterFailover counter = new RequestCallCounterFailover(new RequestCallCounter() {
+                 @Override
+                 public Long increment(String key) {
+                     throw new IllegalStateException("redis is down");
+                 }
+
+                 @Override
+                 public void expire(String key, int expiration, TimeUnit unit) {
+                 }
+             }, local)) {
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            counter.setMetrics(new WafMetrics(registry));
+            Assertions.assertThat(counter.tryAcquire("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000)).isTrue();
+            String delegate = counter.getDelegate().getClass().getName();
+            Assertions.assertThat(registry.get(WafMetrics.COUNTER_ERRORS).tag("counter", delegate).counter().count()).isEqualTo(1);
+            Assertions.assertThat(registry.get(WafMetrics.COUNTER_LATENCY).tag("counter", delegate).timer().count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void incompleteScriptResultIsFailure() {
+        try (RequestCallCounterFailover counter = new RequestCallCounterFailover(new RequestCallCounter() {
+            @Override
+            public Long increment(String key) {
+                return 1L;
+            }
+
+            @Override
+            public void expire(String key, int expiration, TimeUnit unit) {
+            }
+
+            @Override
+            public CallLimitStatus tryAcquireAllWithStatus(List<CallLimit> limits) {
+                return RateLimitScript.status(null, limits);
+            }
+        }, RequestCallCounterFailover.FailurePolicy.DENY, null, 0, 1, 60_000)) {
+            Assertions.assertThat(counter.tryAcquireAllWithStatus(List.of(new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 100, 60_000))).isAllowed()).isFalse();
+            Assertions.assertThat(counter.isOpen()).isTrue();
+        }
+    }
+}
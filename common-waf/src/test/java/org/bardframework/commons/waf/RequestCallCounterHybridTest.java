@@ -0,0 +1,128 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+class RequestCallCounterHybridTest {
+
+    private static final long PERIOD_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void countsLocally() throws InterruptedException {
+        try (StubRedis counter = new StubRedis(0.01)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 1_000, PERIOD_MILLIS);
+            for (int i = 1; i <= 5; i++) {
+                CallLimitStatus status = counter.tryAcquireWithStatus(limit);
+                Assertions.assertThat(status.isAllowed()).isTrue();
+                Assertions.assertThat(status.getRemaining()).isEqualTo(1_000 - i);
+            }
+            Assertions.assertThat(counter.flushes).isEmpty();
+        }
+    }
+
+    @Test
+    void flushesWhenErrorBudgetIsReached() throws InterruptedException {
+        try (StubRedis counter = new StubRedis(0.01)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 1_000, PERIOD_MILLIS);
+            for (int i = 0; i < 10; i++) {
+                counter.tryAcquireWithStatus(limit);
+            }
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (counter.flushes.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertThat(counter.flushes).hasSize(1);
+            Assertions.assertThat(counter.counts.get(counter.redisKey("key"))).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void mergesGlobalCount() throws InterruptedException {
+        try (StubRedis counter = new StubRedis(1)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 10, PERIOD_MILLIS);
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isTrue();
+            /*
+                other nodes counted 7 calls in this window
+             */
+            counter.counts.put(counter.redisKey("key"), 7L);
+            counter.flushAll();
+            Assertions.assertThat(counter.counts.get(counter.redisKey("key"))).isEqualTo(8);
+
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).getRemaining()).isEqualTo(1);
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isTrue();
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isFalse();
+
+            counter.flushAll();
+            Assertions.assertThat(counter.counts.get(counter.redisKey("key"))).isEqualTo(11);
+            Assertions.assertThat(counter.flushes.get(1)).containsExactly(counter.redisKey("key"));
+        }
+    }
+
+    @Test
+    void failedFlushIsRetried() throws InterruptedException {
+        try (StubRedis counter = new StubRedis(1)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 10, PERIOD_MILLIS);
+            counter.tryAcquireWithStatus(limit);
+            counter.tryAcquireWithStatus(limit);
+            counter.failing = true;
+            counter.flushAll();
+            Assertions.assertThat(counter.counts).isEmpty();
+
+            counter.failing = false;
+            counter.flushAll();
+            Assertions.assertThat(counter.counts.get(counter.redisKey("key"))).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void otherAlgorithmsDelegated() throws InterruptedException {
+        try (StubRedis counter = new StubRedis(0.01)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.TOKEN_BUCKET, 2, PERIOD_MILLIS);
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isTrue();
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isTrue();
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isFalse();
+            Assertions.assertThat(counter.getDelegate().increment("other")).isEqualTo(1);
+            Assertions.assertThat(counter.getWindows()).isEmpty();
+        }
+    }
+
+    /**
+     * keeps counts of redis keys in memory, flusher doesn't run on schedule, so flushes are triggered by error budget or test
+     */
+    private static class StubRedis extends RequestCallCounterHybrid {
+        private final Map<String, Long> counts = new ConcurrentHashMap<>();
+        private final List<List<String>> flushes = new CopyOnWriteArrayList<>();
+        private volatile boolean failing;
+
+        StubRedis(double errorBudget) {
+            super(new RedisTemplate<>(), new RequestCallCounterInMemory(), TimeUnit.HOURS.toMillis(1), errorBudget);
+        }
+
+        @Override
+        protected List<Object> incrementAll(List<String> redisKeys, long[] deltas, long[] expireMillis) {
+            if (failing) {
+                throw new IllegalStateException("redis is down");
+            }
+            flushes.add(List.copyOf(redisKeys));
+            List<Object> results = new ArrayList<>();
+            for (int i = 0; i < redisKeys.size(); i++) {
+                Assertions.assertThat(expireMillis[i]).isEqualTo(PERIOD_MILLIS * 2);
+                results.add(counts.merge(redisKeys.get(i), deltas[i], Long::sum));
+                results.add(Boolean.TRUE);
+            }
+            return results;
+        }
+
+        String redisKey(String key) {
+            return key + ":" + System.currentTimeMillis() / PERIOD_MILLIS;
+        }
+    }
+}
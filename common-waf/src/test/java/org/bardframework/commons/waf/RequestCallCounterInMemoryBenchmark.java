@@ -0,0 +1,85 @@
+package org.bardframework.commons.waf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * throughput of in memory counter with 1, 8 and 64 threads, on a few hot keys and on many distinct keys.
+ * not run by tests, run main method from test class path, add {@code -prof gc} to options for allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestCallCounterInMemoryBenchmark {
+
+    @Param({"FIXED_WINDOW", "TOKEN_BUCKET"})
+    private RateLimitAlgorithm algorithm;
+    /**
+     * number of distinct keys, 16 is hot keys contention, 1_000_000 overflows map and exercises refusing new keys
+     */
+    @Param({"16", "10000", "1000000"})
+    private int keys;
+    private RequestCallCounterInMemory counter;
+    private CallLimit[] limits;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        counter = new RequestCallCounterInMemory();
+        limits = new CallLimit[keys];
+        for (int i = 0; i < keys; i++) {
+            limits[i] = new CallLimit("key" + i, algorithm, 1_000_000, 60_000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        counter.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public CallLimitStatus threads1() {
+        return this.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public CallLimitStatus threads8() {
+        return this.tryAcquire();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public CallLimitStatus threads64() {
+        return this.tryAcquire();
+    }
+
+    private CallLimitStatus tryAcquire() {
+        return counter.tryAcquireWithStatus(limits[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RequestCallCounterInMemoryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class RequestCallCounterInMemoryTest {
+
+    @Test
+    void incrementConcurrently() throws InterruptedException {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            int threads = 8;
+            int increments = 10_000;
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment("key");
+                    }
+                });
+            }
+            executor.shutdown();
+            Assertions.assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+            Assertions.assertThat(counter.increment("key")).isEqualTo(threads * increments + 1L);
+        }
+    }
+
+    @Test
+    void expire() throws InterruptedException {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            Assertions.assertThat(counter.increment("key")).isEqualTo(1L);
+            counter.expire("key", 20, TimeUnit.MILLISECONDS);
+            Assertions.assertThat(counter.increment("key")).isEqualTo(2L);
+            Thread.sleep(50);
+            Assertions.assertThat(counter.increment("key")).isEqualTo(1L);
+        }
+    }
+
+    @Test
+    void maxEntries() {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory(100, 1_000)) {
+            for (int i = 0; i < 1_000; i++) {
+                counter.increment("key" + i);
+            }
+            Assertions.assertThat(counter.size()).isEqualTo(100);
+            Assertions.assertThat(counter.getRefusedCount().sum()).isEqualTo(900);
+            Assertions.assertThat(counter.getEvictionCount().sum()).isZero();
+            Assertions.assertThat(counter.getHitCount().sum()).isZero();
+            Assertions.assertThat(counter.increment("key0")).isEqualTo(2);
+            Assertions.assertThat(counter.getHitCount().sum()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void fullMapKeepsLiveWindows() throws InterruptedException {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory(10, 60_000)) {
+            CallLimit limit = new CallLimit("key", RateLimitAlgorithm.FIXED_WINDOW, 3, 60_000);
+            for (int i = 0; i < 3; i++) {
+                Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isTrue();
+            }
+            for (int i = 0; i < 9; i++) {
+                counter.incrementAndExpire("short" + i, 50, TimeUnit.MILLISECONDS);
+            }
+            /*
+                flood of new keys is refused, window of key is not reset
+             */
+            for (int i = 0; i < 100; i++) {
+                Assertions.assertThat(counter.incrementAndExpire("flood" + i, 60, TimeUnit.SECONDS)).isEqualTo(Long.MAX_VALUE);
+                Assertions.assertThat(counter.tryAcquire("flood" + i, RateLimitAlgorithm.FIXED_WINDOW, 10, 60_000)).isFalse();
+                Assertions.assertThat(counter.tryAcquireWithStatus(new CallLimit("flood" + i, RateLimitAlgorithm.TOKEN_BUCKET, 10, 60_000)).isAllowed()).isFalse();
+            }
+            Assertions.assertThat(counter.tryAcquireWithStatus(limit).isAllowed()).isFalse();
+            /*
+                expired entries are swept when map is full
+             */
+            Thread.sleep(RequestCallCounterInMemory.CAPACITY_SWEEP_INTERVAL_MILLIS + 50);
+            Assertions.assertThat(counter.incrementAndExpire("new", 60, TimeUnit.SECONDS)).isEqualTo(1L);
+            Assertions.assertThat(counter.getEvictionCount().sum()).isEqualTo(9);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void tryAcquire(RateLimitAlgorithm algorithm) {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            for (int i = 0; i < 10; i++) {
+                Assertions.assertThat(counter.tryAcquire("key", algorithm, 10, 60_000)).isTrue();
+            }
+            Assertions.assertThat(counter.tryAcquire("key", algorithm, 10, 60_000)).isFalse();
+            Assertions.assertThat(counter.tryAcquire("other", algorithm, 10, 60_000)).isTrue();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void tryAcquireWithStatus(RateLimitAlgorithm algorithm) {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            CallLimit limit = new CallLimit("key", algorithm, 3, 60_000);
+            for (int i = 2; i >= 0; i--) {
+                CallLimitStatus status = counter.tryAcquireWithStatus(limit);
+                Assertions.assertThat(status.isAllowed()).isTrue();
+                Assertions.assertThat(status.getRemaining()).isEqualTo(i);
+                Assertions.assertThat(status.getResetMillis()).isBetween(0L, 60_000L);
+            }
+            CallLimitStatus rejected = counter.tryAcquireAllWithStatus(List.of(new CallLimit("other", algorithm, 10, 60_000), limit));
+            Assertions.assertThat(rejected.isAllowed()).isFalse();
+            Assertions.assertThat(rejected.getCallLimit()).isSameAs(limit);
+            Assertions.assertThat(rejected.getRemaining()).isZero();
+            Assertions.assertThat(rejected.getResetMillis()).isPositive();
+        }
+    }
+}
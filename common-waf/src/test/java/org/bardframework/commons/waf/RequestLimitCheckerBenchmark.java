@@ -0,0 +1,57 @@
+package org.bardframework.commons.waf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of resolving call limit of a rule for a unique key, run with {@code -prof gc} for allocation per call.
+ * not run by tests, run main method from test class path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestLimitCheckerBenchmark {
+
+    @Param({"1", "4"})
+    private int shards;
+    private RequestLimitChecker checker;
+    private String[] uniqueKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        checker = new RequestLimitChecker("/api/users/**", null, null, 100, 1, TimeUnit.MINUTES);
+        checker.setShards(shards);
+        uniqueKeys = new String[1_000];
+        for (int i = 0; i < uniqueKeys.length; i++) {
+            uniqueKeys[i] = "10.0." + i / 256 + "." + i % 256;
+        }
+    }
+
+    @Benchmark
+    public CallLimit toCallLimit() {
+        return checker.toCallLimit(uniqueKeys[ThreadLocalRandom.current().nextInt(uniqueKeys.length)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RequestLimitCheckerBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+}
@@ -0,0 +1,119 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.bardframework.commons.waf.extractor.RequestHeaderKeyDetector;
+import org.bardframework.commons.waf.extractor.TrustedProxyIpDetector;
+import org.bardframework.commons.waf.ip.ForwardedIpResolver;
+import org.bardframework.commons.waf.ip.IpPrefixTrie;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+class RequestLimitCheckerTest {
+
+    @Test
+    void keysOfClientInSameSlot() {
+        CallLimit users = new RequestLimitChecker(HttpMethod.GET, "/api/users/**", null, null, 10, 1, TimeUnit.MINUTES).toCallLimit("1.2.3.4");
+        CallLimit orders = new RequestLimitChecker("/api/orders/**", null, null, 10, 1, TimeUnit.MINUTES).toCallLimit("1.2.3.4");
+
+        Assertions.assertThat(users.getKey()).isEqualTo("CALL_LIMITER_{1.2.3.4}@GET@/api/users/**");
+        Assertions.assertThat(ClusterSlotHashUtil.calculateSlot(users.getKey())).isEqualTo(ClusterSlotHashUtil.calculateSlot(orders.getKey()));
+    }
+
+    @Test
+    void shards() {
+        RequestLimitChecker checker = new RequestLimitChecker("/api/**", null, null, 1_000, 1, TimeUnit.SECONDS);
+        checker.setShards(4);
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            CallLimit limit = checker.toCallLimit("global");
+            Assertions.assertThat(limit.getLimit()).isEqualTo(250);
+            keys.add(limit.getKey());
+        }
+        Assertions.assertThat(keys).hasSize(4).allMatch(key -> key.startsWith("CALL_LIMITER_{global#"));
+    }
+
+    @Test
+    void callLimitsCached() {
+        RequestLimitChecker checker = new RequestLimitChecker("/api/**", null, null, 10, 1, TimeUnit.MINUTES);
+        checker.setMaxCachedKeys(2);
+        CallLimit limit = checker.toCallLimit("client");
+        Assertions.assertThat(checker.toCallLimit("client")).isSameAs(limit);
+        /*
+            recently seen key survives a new generation, a key not seen for two generations is dropped
+         */
+        checker.toCallLimit("other1");
+        checker.toCallLimit("other2");
+        Assertions.assertThat(checker.toCallLimit("client")).isSameAs(limit);
+        for (int i = 3; i < 10; i++) {
+            checker.toCallLimit("other" + i);
+        }
+        Assertions.assertThat(checker.toCallLimit("client")).isNotSameAs(limit);
+
+        checker.setLimit(20);
+        Assertions.assertThat(checker.toCallLimit("client").getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void whiteListRangesOfPackedKeys() {
+        ForwardedIpResolver resolver = new ForwardedIpResolver(List.of("X-Forwarded-For"), IpPrefixTrie.of(List.of("10.0.0.0/8")), true);
+        RequestLimitChecker checker = new RequestLimitChecker("/api/**", null, new TrustedProxyIpDetector(resolver), 10, 1, TimeUnit.MINUTES);
+        checker.setWhiteList("172.16.0.0/12", "2001:db8::/32");
+
+        Assertions.assertThat(checker.resolveCallLimit(this.forwarded("172.20.1.2"), new MockHttpServletResponse())).isNull();
+        Assertions.assertThat(checker.resolveCallLimit(this.forwarded("2001:db8::7"), new MockHttpServletResponse())).isNull();
+        CallLimit limit = checker.resolveCallLimit(this.forwarded("1.2.3.4"), new MockHttpServletResponse());
+        Assertions.assertThat(limit).isNotNull();
+        Assertions.assertThat(limit.getKey()).contains("{01020304}");
+    }
+
+    @Test
+    void shardsShareBan() throws Exception {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory();
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 3, 60_000, 60_000)) {
+            RequestLimitChecker checker = new RequestLimitChecker("/api/**", counter, new RequestHeaderKeyDetector("X-Client"), 4, 1, TimeUnit.MINUTES);
+            checker.setShards(4);
+            WafFilter filter = new WafFilter(List.of(checker), null, null, penaltyBox);
+            String banKey = checker.toCallLimit("client").getBanKey();
+            Assertions.assertThat(banKey).isEqualTo("CALL_LIMITER_{client}" + checker.getKeySuffix());
+
+            int rejected = 0;
+            while (!penaltyBox.isBanned(banKey)) {
+                Assertions.assertThat(rejected).isLessThan(3);
+                if (this.call(filter, "client") == 429) {
+                    rejected++;
+                }
+            }
+            Assertions.assertThat(rejected).isEqualTo(3);
+
+            penaltyBox.ban("CALL_LIMITER_{other}" + checker.getKeySuffix(), 60_000);
+            for (int i = 0; i < 20; i++) {
+                Assertions.assertThat(this.call(filter, "other")).isEqualTo(429);
+            }
+            Assertions.assertThat(this.call(filter, "third")).isEqualTo(200);
+        }
+    }
+
+    private MockHttpServletRequest forwarded(String client) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", client);
+        return request;
+    }
+
+    private int call(WafFilter filter, String client) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.addHeader("X-Client", client);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+        });
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,79 @@
+package org.bardframework.commons.waf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of finding matched rules of a request, using index candidates and by matching all rules.
+ * not run by tests, run main method from test class path, add {@code -prof gc} to options for allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestRuleIndexBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int rules;
+    private List<Rule> all;
+    private RequestRuleIndex<Rule> index;
+    private MockHttpServletRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        all = new ArrayList<>();
+        all.add(new Rule(null, "/**"));
+        for (int i = 1; i < rules; i++) {
+            all.add(new Rule(i % 2 == 0 ? HttpMethod.GET : HttpMethod.POST, "/api/service" + i + "/{id}/**"));
+        }
+        index = new RequestRuleIndex<>(all, Rule::method, Rule::path);
+        request = new MockHttpServletRequest("GET", "/api/service" + (rules / 2 * 2) + "/1/items");
+    }
+
+    @Benchmark
+    public void index(Blackhole blackhole) {
+        for (Rule rule : index.candidates(request.getMethod(), request.getRequestURI())) {
+            blackhole.consume(rule.matcher().matches(request));
+        }
+    }
+
+    @Benchmark
+    public void linear(Blackhole blackhole) {
+        for (Rule rule : all) {
+            blackhole.consume(rule.matcher().matches(request));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RequestRuleIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private record Rule(HttpMethod method, String path, PathPatternRequestMatcher matcher) {
+        Rule(HttpMethod method, String path) {
+            this(method, path, PathPatternRequestMatcher.withDefaults().matcher(method, path));
+        }
+    }
+}
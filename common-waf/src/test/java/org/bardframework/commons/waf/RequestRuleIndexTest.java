@@ -0,0 +1,31 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+
+class RequestRuleIndexTest {
+
+    @Test
+    void candidates() {
+        Rule any = new Rule(null, "/**");
+        Rule users = new Rule(null, "/api/users/**");
+        Rule postUsers = new Rule(HttpMethod.POST, "/api/users");
+        Rule orders = new Rule(HttpMethod.GET, "/api/orders/{id}");
+        Rule files = new Rule(null, "/static/files*");
+        RequestRuleIndex<Rule> index = new RequestRuleIndex<>(List.of(any, users, postUsers, orders, files), Rule::method, Rule::path);
+
+        Assertions.assertThat(index.candidates("GET", "/api/users/1")).containsExactly(any, users);
+        Assertions.assertThat(index.candidates("POST", "/api/users")).containsExactly(any, users, postUsers);
+        Assertions.assertThat(index.candidates("GET", "/api/orders/1")).containsExactly(any, orders);
+        Assertions.assertThat(index.candidates("POST", "/api/orders/1")).containsExactly(any);
+        Assertions.assertThat(index.candidates("GET", "/static/files2")).containsExactly(any, files);
+        Assertions.assertThat(index.candidates("GET", "/other")).containsExactly(any);
+        Assertions.assertThat(index.candidates("GET", "/api/users%2F1")).hasSize(5);
+    }
+
+    private record Rule(HttpMethod method, String path) {
+    }
+}
@@ -0,0 +1,48 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+class TopKeysTest {
+
+    @Test
+    void frequentKeysAreKept() {
+        TopKeys topKeys = new TopKeys(100);
+        for (int i = 0; i < 10_000; i++) {
+            topKeys.add("noise" + i);
+            if (i % 10 == 0) {
+                topKeys.add("attacker");
+            }
+            if (i % 20 == 0) {
+                topKeys.add("second");
+            }
+        }
+        Assertions.assertThat(topKeys.top(2)).extracting(Map.Entry::getKey).containsExactly("attacker", "second");
+        Assertions.assertThat(topKeys.top(1_000)).hasSize(100);
+    }
+
+    @Test
+    void concurrentAdd() throws InterruptedException {
+        TopKeys topKeys = new TopKeys(100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    topKeys.add("noise" + thread + "-" + i);
+                    if (i % 5 == 0) {
+                        topKeys.add("attacker");
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assertions.assertThat(executor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+        Assertions.assertThat(topKeys.top(1)).extracting(Map.Entry::getKey).containsExactly("attacker");
+    }
+}
@@ -0,0 +1,162 @@
+package org.bardframework.commons.waf;
+
+import jakarta.servlet.FilterChain;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.Assertions;
+import org.bardframework.commons.waf.extractor.RequestHeaderKeyDetector;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays synthetic traffic through {@link WafFilter}: client keys follow a zipfian distribution and some clients send bursts.
+ * Reports throughput, p99 of filter overhead and over/under admission compared to exact limits.
+ * It runs only with {@code -Dwaf.load-test=true}, because it takes several seconds and writes keys to redis.
+ * Size is set by {@code -Dwaf.load-test.requests}, redis backend uses local redis on {@code -Dwaf.load-test.redis-port} (default 6379)
+ * and is skipped if it is not reachable.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "waf.load-test", matches = "true")
+class WafLoadTest {
+
+    private static final int REQUESTS = Integer.getInteger("waf.load-test.requests", 50_000);
+    private static final int REDIS_PORT = Integer.getInteger("waf.load-test.redis-port", 6379);
+    private static final int THREADS = 8;
+    private static final int CLIENTS = 1_000;
+    private static final int LIMIT = 100;
+    private static final String HEADER = "X-Client";
+
+    @Test
+    void inMemory() throws Exception {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            Report report = this.run("in-memory", counter);
+            Assertions.assertThat(report.overAdmitted).isZero();
+            Assertions.assertThat(report.underAdmitted).isZero();
+        }
+    }
+
+    @Test
+    void redis() throws Exception {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", REDIS_PORT));
+        connectionFactory.afterPropertiesSet();
+        try {
+            StringRedisTemplate template = new StringRedisTemplate(connectionFactory);
+            try {
+                template.hasKey("waf-load-test");
+            } catch (Exception e) {
+                Assumptions.abort("redis is not reachable on port " + REDIS_PORT);
+            }
+            Report report = this.run("redis", new RequestCallCounterRedis(template));
+            template.delete(report.keys);
+            Assertions.assertThat(report.overAdmitted).isZero();
+            Assertions.assertThat(report.underAdmitted).isZero();
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private Report run(String name, RequestCallCounter counter) throws Exception {
+        /*
+            unique path per run, so counters of previous runs in redis are not shared
+         */
+        String path = "/load-test/" + UUID.randomUUID();
+        RequestLimitChecker checker = new RequestLimitChecker(path + "/**", counter, new RequestHeaderKeyDetector(HEADER), LIMIT, 1, TimeUnit.HOURS);
+        WafFilter filter = new WafFilter(List.of(checker));
+        int[] traffic = traffic(REQUESTS, new Random(42));
+        ConcurrentHashMap<String, AtomicLong> admitted = new ConcurrentHashMap<>();
+        FilterChain chain = (request, response) -> admitted.computeIfAbsent(((MockHttpServletRequest) request).getHeader(HEADER), key -> new AtomicLong()).incrementAndGet();
+        long[] latencies = new long[traffic.length];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long start = System.nanoTime();
+        try {
+            Future<?>[] futures = new Future[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures[t] = executor.submit(() -> {
+                    for (int i = thread; i < traffic.length; i += THREADS) {
+                        MockHttpServletRequest request = new MockHttpServletRequest("GET", path + "/items");
+                        request.addHeader(HEADER, "client-" + traffic[i]);
+                        MockHttpServletResponse response = new MockHttpServletResponse();
+                        long begin = System.nanoTime();
+                        filter.doFilter(request, response, chain);
+                        latencies[i] = System.nanoTime() - begin;
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long[] sent = new long[CLIENTS];
+        for (int client : traffic) {
+            sent[client]++;
+        }
+        Report report = new Report();
+        for (int client = 0; client < CLIENTS; client++) {
+            AtomicLong count = admitted.get("client-" + client);
+            long actual = null == count ? 0 : count.get();
+            long expected = Math.min(sent[client], LIMIT);
+            report.keys.add(checker.toCallLimit("client-" + client).getKey());
+            report.expected += expected;
+            report.overAdmitted += Math.max(actual - expected, 0);
+            report.underAdmitted += Math.max(expected - actual, 0);
+        }
+        Arrays.sort(latencies);
+        log.info("[{}] {} requests, {} threads: throughput [{}] req/s, p50 [{}] us, p99 [{}] us, expected admissions [{}], over admitted [{}], under admitted [{}]",
+                name, traffic.length, THREADS, (long) (traffic.length / (elapsed / 1e9)), latencies[latencies.length / 2] / 1_000,
+                latencies[(int) (latencies.length * 0.99)] / 1_000, report.expected, report.overAdmitted, report.underAdmitted);
+        return report;
+    }
+
+    /**
+     * @return client of each request, zipfian (s = 1.1) with bursts of 50 requests from a single client in 1% of positions
+     */
+    private static int[] traffic(int requests, Random random) {
+        double[] cdf = new double[CLIENTS];
+        double sum = 0;
+        for (int i = 0; i < CLIENTS; i++) {
+            sum += 1 / Math.pow(i + 1, 1.1);
+            cdf[i] = sum;
+        }
+        int[] traffic = new int[requests];
+        int i = 0;
+        while (i < requests) {
+            int index = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            int client = Math.min(index < 0 ? -index - 1 : index, CLIENTS - 1);
+            int burst = random.nextInt(100) == 0 ? 50 : 1;
+            for (int j = 0; j < burst && i < requests; j++) {
+                traffic[i++] = client;
+            }
+        }
+        return traffic;
+    }
+
+    private static class Report {
+        private final List<String> keys = new ArrayList<>();
+        private long expected;
+        private long overAdmitted;
+        private long underAdmitted;
+    }
+}
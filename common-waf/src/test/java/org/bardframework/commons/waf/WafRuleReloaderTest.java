@@ -0,0 +1,88 @@
+package org.bardframework.commons.waf;
+
+import org.assertj.core.api.Assertions;
+import org.bardframework.commons.waf.extractor.IpDetector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+class WafRuleReloaderTest {
+
+    @Test
+    void reload(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("waf-rules.properties");
+        Files.writeString(file, """
+                waf.rules[0].path=/api/**
+                waf.rules[0].limit=1
+                waf.rules[0].period=1
+                waf.rules[0].period-unit=MINUTES
+                """);
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            WafFilter filter = new WafFilter(List.of());
+            WafRuleReloader reloader = new WafRuleReloader(filter, new WafRuleFileSource(file), counter, new IpDetector(), 60_000);
+            reloader.close();
+            Assertions.assertThat(filter.getCheckers()).hasSize(1);
+            Assertions.assertThat(this.call(filter)).isEqualTo(200);
+            Assertions.assertThat(this.call(filter)).isEqualTo(429);
+
+            Files.writeString(file, """
+                    waf.rules[0].path=/api/**
+                    waf.rules[0].limit=3
+                    waf.rules[0].period=1
+                    waf.rules[0].period-unit=MINUTES
+                    """);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1_000));
+            Assertions.assertThat(reloader.reload()).isTrue();
+            Assertions.assertThat(reloader.reload()).isFalse();
+            /*
+                counter of rule is preserved, two calls are counted already
+             */
+            Assertions.assertThat(this.call(filter)).isEqualTo(200);
+            Assertions.assertThat(this.call(filter)).isEqualTo(429);
+        }
+    }
+
+    @Test
+    void emptySourceKeepsRules(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("waf-rules.properties");
+        Files.writeString(file, """
+                waf.rules[0].path=/api/**
+                waf.rules[0].limit=1
+                waf.rules[0].period=1
+                waf.rules[0].period-unit=MINUTES
+                """);
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            WafFilter filter = new WafFilter(List.of());
+            WafRuleReloader reloader = new WafRuleReloader(filter, new WafRuleFileSource(file), counter, new IpDetector(), 60_000);
+            reloader.close();
+            Assertions.assertThat(filter.getCheckers()).hasSize(1);
+
+            Files.writeString(file, "");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1_000));
+            Assertions.assertThat(reloader.reload()).isFalse();
+            Files.writeString(file, "other.property=1");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 2_000));
+            Assertions.assertThat(reloader.reload()).isFalse();
+            Assertions.assertThat(filter.getCheckers()).hasSize(1);
+            Assertions.assertThat(this.call(filter)).isEqualTo(200);
+            Assertions.assertThat(this.call(filter)).isEqualTo(429);
+
+            WafRuleReloader allowEmpty = new WafRuleReloader(filter, new WafRuleFileSource(file), counter, new IpDetector(), 60_000, true);
+            allowEmpty.close();
+            Assertions.assertThat(filter.getCheckers()).isEmpty();
+        }
+    }
+
+    private int call(WafFilter filter) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/users"), response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,45 @@
+package org.bardframework.commons.waf.extractor;
+
+import jakarta.servlet.http.Cookie;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class CompositeKeyDetectorTest {
+
+    @Test
+    void getUniqueKey() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Client", "mobile");
+        request.setCookies(new Cookie("session", "abc"));
+        AtomicInteger ipCalls = new AtomicInteger();
+        IpDetector ipDetector = new IpDetector(List.of());
+        RequestKeyDetector countingIpDetector = (req, res) -> {
+            ipCalls.incrementAndGet();
+            return ipDetector.getUniqueKey(req, res);
+        };
+        CompositeKeyDetector detector = new CompositeKeyDetector(List.of(countingIpDetector, new RequestHeaderKeyDetector("X-Client"), new RequestCookieKeyDetector("session"), new RequestHeaderKeyDetector("X-Missing")));
+
+        Assertions.assertThat(detector.getUniqueKey(request, response)).isEqualTo("10.0.0.1|mobile|abc|");
+        Assertions.assertThat(detector.getUniqueKey(request, response)).isEqualTo("10.0.0.1|mobile|abc|");
+        Assertions.assertThat(ipCalls).hasValue(1);
+        Assertions.assertThat(new CompositeKeyDetector(List.of(new RequestHeaderKeyDetector("X-Missing"))).getUniqueKey(request, response)).isNull();
+    }
+
+    @Test
+    void queryStringOnly() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+        request.setQueryString("a=1&apiKey=k%20y&apiKeys=2&flag");
+        request.addParameter("body", "value");
+        Assertions.assertThat(new RequestParamKeyDetector("apiKey", true).getUniqueKey(request, null)).isEqualTo("k y");
+        Assertions.assertThat(new RequestParamKeyDetector("flag", true).getUniqueKey(request, null)).isEmpty();
+        Assertions.assertThat(new RequestParamKeyDetector("body", true).getUniqueKey(request, null)).isNull();
+        Assertions.assertThat(RequestParamKeyDetector.queryParameter("apiKeys=2", "apiKey")).isNull();
+    }
+}
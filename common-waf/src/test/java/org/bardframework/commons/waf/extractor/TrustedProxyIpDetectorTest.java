@@ -0,0 +1,24 @@
+package org.bardframework.commons.waf.extractor;
+
+import org.assertj.core.api.Assertions;
+import org.bardframework.commons.waf.ip.IpPrefixTrie;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+class TrustedProxyIpDetectorTest {
+
+    @Test
+    void allHeaderLines() {
+        TrustedProxyIpDetector detector = new TrustedProxyIpDetector(IpPrefixTrie.of(List.of("10.0.0.0/8")));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "6.6.6.6");
+        request.addHeader("X-Forwarded-For", "1.2.3.4, 10.0.0.2");
+        Assertions.assertThat(detector.detect(request)).isEqualTo("1.2.3.4");
+
+        request.setRemoteAddr("5.5.5.5");
+        Assertions.assertThat(detector.detect(request)).isEqualTo("5.5.5.5");
+    }
+}
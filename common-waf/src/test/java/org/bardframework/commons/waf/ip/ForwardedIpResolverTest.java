@@ -0,0 +1,65 @@
+package org.bardframework.commons.waf.ip;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+class ForwardedIpResolverTest {
+
+    private final IpPrefixSet trustedProxies = IpPrefixTrie.of(List.of("10.0.0.0/8", "fd00::/8"));
+
+    @Test
+    void resolve() {
+        ForwardedIpResolver resolver = new ForwardedIpResolver(trustedProxies);
+
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("6.6.6.6, 1.2.3.4, 10.0.0.2"))).isEqualTo("1.2.3.4");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("1.2.3.4:5678"))).isEqualTo("1.2.3.4");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("[2001:db8::1]:443, fd00::1"))).isEqualTo("2001:db8::1");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("10.0.0.3, 10.0.0.2"))).isEqualTo("10.0.0.3");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("unknown"))).isEqualTo("10.0.0.1");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", name -> null)).isEqualTo("10.0.0.1");
+        /*
+            peer is not a trusted proxy, header is ignored
+         */
+        Assertions.assertThat(resolver.resolve("5.5.5.5", xff("1.2.3.4"))).isEqualTo("5.5.5.5");
+    }
+
+    @Test
+    void packed() {
+        ForwardedIpResolver resolver = new ForwardedIpResolver(List.of("X-Forwarded-For"), trustedProxies, true);
+
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("1.2.3.4"))).isEqualTo("01020304");
+        Assertions.assertThat(resolver.resolve("::ffff:5.5.5.5", name -> null)).isEqualTo("05050505");
+    }
+
+    @Test
+    void multipleHeaderLines() {
+        ForwardedIpResolver resolver = new ForwardedIpResolver(trustedProxies);
+
+        /*
+            proxy added a second line instead of appending to fake line of client
+         */
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("6.6.6.6", "1.2.3.4"))).isEqualTo("1.2.3.4");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("6.6.6.6", "1.2.3.4, 10.0.0.2", ""))).isEqualTo("1.2.3.4");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("6.6.6.6", "10.0.0.2"))).isEqualTo("6.6.6.6");
+    }
+
+    @Test
+    void invalidEntry() {
+        ForwardedIpResolver resolver = new ForwardedIpResolver(trustedProxies);
+
+        /*
+            client is unknown, neither garbage nor a trusted proxy of chain is used as key
+         */
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("1.2.3.4, garbage, 10.0.0.2"))).isEqualTo("10.0.0.1");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("1.2.3.4, garbage"))).isEqualTo("10.0.0.1");
+        Assertions.assertThat(resolver.resolve("10.0.0.1", xff("garbage, 1.2.3.4"))).isEqualTo("1.2.3.4");
+    }
+
+    private static Function<String, Iterator<String>> xff(String... values) {
+        return name -> "X-Forwarded-For".equals(name) ? List.of(values).iterator() : null;
+    }
+}
@@ -0,0 +1,39 @@
+package org.bardframework.commons.waf.ip;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class IpPrefixTrieTest {
+
+    @Test
+    void contains() {
+        IpPrefixTrie trie = IpPrefixTrie.of(List.of("10.0.0.0/8", "192.168.1.7", "2001:db8::/32", "::ffff:172.16.0.0/108"));
+
+        Assertions.assertThat(trie.contains("10.20.30.40")).isTrue();
+        Assertions.assertThat(trie.contains("11.0.0.1")).isFalse();
+        Assertions.assertThat(trie.contains("192.168.1.7")).isTrue();
+        Assertions.assertThat(trie.contains("192.168.1.8")).isFalse();
+        Assertions.assertThat(trie.contains("172.31.255.255")).isTrue();
+        Assertions.assertThat(trie.contains("172.32.0.0")).isFalse();
+        Assertions.assertThat(trie.contains("::ffff:10.1.1.1")).isTrue();
+        Assertions.assertThat(trie.contains("2001:db8:1::1")).isTrue();
+        Assertions.assertThat(trie.contains("2001:db9::1")).isFalse();
+        Assertions.assertThat(trie.contains("not an ip")).isFalse();
+    }
+
+    @Test
+    void parse() {
+        Assertions.assertThat(IpAddresses.parse("1.2.3.4")).containsExactly(1, 2, 3, 4);
+        Assertions.assertThat(IpAddresses.parse("::1")).hasSize(16).endsWith(1);
+        Assertions.assertThat(IpAddresses.parse("fe80::1%eth0")).hasSize(16);
+        Assertions.assertThat(IpAddresses.parse("1:2:3:4:5:6:7:8")).hasSize(16);
+        Assertions.assertThat(IpAddresses.parse("::")).hasSize(16);
+        Assertions.assertThat(IpAddresses.parse("256.1.1.1")).isNull();
+        Assertions.assertThat(IpAddresses.parse("1.2.3")).isNull();
+        Assertions.assertThat(IpAddresses.parse("1::2::3")).isNull();
+        Assertions.assertThat(IpAddresses.parse("1:2:3:4:5:6:7:8:9")).isNull();
+        Assertions.assertThat(IpAddresses.parse("12345::")).isNull();
+    }
+}
@@ -0,0 +1,71 @@
+package org.bardframework.commons.waf.reactive;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.bardframework.commons.waf.PenaltyBox;
+import org.bardframework.commons.waf.RequestCallCounterInMemory;
+import org.bardframework.commons.waf.RequestLimitChecker;
+import org.bardframework.commons.waf.WafMetrics;
+import org.bardframework.commons.waf.ip.IpPrefixTrie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+class WafWebFilterTest {
+
+    @Test
+    void filter() {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory()) {
+            RequestLimitChecker checker = new RequestLimitChecker("/api/**", counter, null, 2, 1, TimeUnit.MINUTES);
+            WafWebFilter filter = new WafWebFilter(List.of(checker), new ServerRequestHeaderKeyDetector("X-Client"), ReactiveRequestCallCounter.of(counter));
+            for (int i = 0; i < 3; i++) {
+                MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users").header("X-Client", "client"));
+                filter.filter(exchange, filtered -> Mono.empty()).block();
+                Assertions.assertThat(exchange.getResponse().getStatusCode()).isEqualTo(i < 2 ? null : HttpStatus.TOO_MANY_REQUESTS);
+            }
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/other").header("X-Client", "client"));
+            filter.filter(exchange, filtered -> Mono.empty()).block();
+            Assertions.assertThat(exchange.getResponse().getStatusCode()).isNull();
+        }
+    }
+
+    @Test
+    void blockListPenaltyBoxAndMetrics() throws InterruptedException {
+        try (RequestCallCounterInMemory counter = new RequestCallCounterInMemory();
+             PenaltyBox penaltyBox = new PenaltyBox(counter, 1, 60_000, 60_000)) {
+            RequestLimitChecker checker = new RequestLimitChecker("/api/**", counter, null, 1, 1, TimeUnit.MINUTES);
+            WafWebFilter filter = new WafWebFilter(List.of(checker), new ServerRequestHeaderKeyDetector("X-Client"), ReactiveRequestCallCounter.of(counter),
+                    IpPrefixTrie.of(List.of("10.1.0.0/16")), null, penaltyBox);
+            SimpleMeterRegistry registry = new SimpleMeterRegistry();
+            filter.setMetrics(new WafMetrics(registry));
+
+            MockServerWebExchange blocked = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users").header("X-Forwarded-For", "10.1.2.3"));
+            filter.filter(blocked, filtered -> Mono.empty()).block();
+            Assertions.assertThat(blocked.getResponse().getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+
+            Assertions.assertThat(this.filter(filter).getResponse().getStatusCode()).isNull();
+            Assertions.assertThat(this.filter(filter).getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (penaltyBox.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            MockServerWebExchange banned = this.filter(filter);
+            Assertions.assertThat(banned.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+            Assertions.assertThat(banned.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+            Assertions.assertThat(registry.find(WafMetrics.REQUESTS).tag("outcome", "rejected").counters()).isNotEmpty();
+            Assertions.assertThat(registry.find(WafMetrics.REQUESTS).tag("outcome", "allowed").counter().count()).isEqualTo(1);
+        }
+    }
+
+    private MockServerWebExchange filter(WafWebFilter filter) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users").header("X-Client", "client"));
+        filter.filter(exchange, filtered -> Mono.empty()).block();
+        return exchange;
+    }
+}